@@ -0,0 +1,34 @@
+/*
+ * The interface describing a subtree aggregate maintained by an augmented BST.
+ */
+
+/**
+ * A monoid over the key-value pairs of a tree. An AugmentedRedBlackBST stores, at every
+ * node, the combination of all pairs in that node's subtree (in key order), and keeps it
+ * up to date through insertions, deletions and rotations.
+ * @param <T> the type of the objects stored in the tree
+ * @param <K> the type of the keys associated with the objects
+ * @param <A> the type of the aggregate
+ */
+interface Augmentation<T, K, A> {
+
+    /**
+     * @return the aggregate of an empty subtree, combine(identity(), a) must equal a
+     */
+    A identity();
+
+    /**
+     * @param key the key of the pair
+     * @param value the object of the pair
+     * @return the aggregate of a single key-value pair
+     */
+    A lift(K key, T value);
+
+    /**
+     * Combines two adjacent aggregates, must be associative.
+     * @param left the aggregate of the pairs with lesser keys
+     * @param right the aggregate of the pairs with greater keys
+     * @return the aggregate of both
+     */
+    A combine(A left, A right);
+}
@@ -0,0 +1,121 @@
+/*
+ * A set of unit tests covering the augmented red black BST and the trees built on it.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+import util.ListUtils;
+
+import java.util.*;
+
+/**
+ * A set of unit tests comparing the range sum and interval trees against linear scans.
+ */
+public class AugmentedBSTTests {
+
+    @Test
+    public void testRangeSum() {
+        RangeSumBST<Integer> testBST = new RangeSumBST<>();
+        Map<Integer, Deque<Long>> expected = new TreeMap<>();
+        Random gen = new Random();
+        for (int i = 0; i < 5000; i++) {
+            int key = gen.nextInt(500);
+            if (gen.nextInt(3) == 0 && expected.containsKey(key)) {
+                Assert.assertEquals(expected.get(key).pop(), testBST.remove(key));
+                if (expected.get(key).isEmpty()) expected.remove(key);
+            } else {
+                long val = gen.nextInt(1000);
+                testBST.put(val, key);
+                expected.computeIfAbsent(key, k -> new ArrayDeque<>()).push(val);
+            }
+            int lo = gen.nextInt(500);
+            int hi = lo + gen.nextInt(100);
+            Assert.assertEquals(linearSum(expected, lo, hi), testBST.sum(lo, hi));
+            Assert.assertEquals(linearSum(expected, Integer.MIN_VALUE, hi), testBST.prefixSum(hi));
+        }
+        Assert.assertEquals(linearSum(expected, Integer.MIN_VALUE, Integer.MAX_VALUE), testBST.sum());
+    }
+
+    @Test
+    public void testHotKeyDuplicates() {
+        RangeSumBST<Integer> testBST = new RangeSumBST<>();
+        for (int i = 0; i < 1000; i++) testBST.put((long) i, i * 2); // neighbours rotate around the hot key
+        long hot = 0;
+        for (int i = 1; i <= 200000; i++) { // O(1) per node refresh, not O(duplicates)
+            testBST.put((long) i, 1001);
+            hot += i;
+        }
+        Assert.assertEquals(hot, testBST.sum(1001, 1001));
+        for (int i = 200000; i > 100000; i--) {
+            Assert.assertEquals((Long) (long) i, testBST.remove(1001));
+            hot -= i;
+        }
+        Assert.assertEquals(hot + 500 + 501, testBST.sum(1000, 1002)); // keys 1000 and 1002 hold 500 and 501
+        Assert.assertEquals(hot + 999L * 1000 / 2, testBST.sum());
+    }
+
+    @Test
+    public void testIntervalOverlap() {
+        IntervalTree<Integer, Integer> testBST = new IntervalTree<>();
+        List<int[]> intervals = new ArrayList<>();
+        List<Integer> lows = ListUtils.genIntList(2000, 10000);
+        Random gen = new Random();
+        for (int i = 0; i < lows.size(); i++) {
+            int[] in = {lows.get(i), lows.get(i) + gen.nextInt(200)};
+            intervals.add(in);
+            testBST.put(i, in[0], in[1]);
+        }
+        for (int i = 0; i < 1000; i++) {
+            int lo = gen.nextInt(10000);
+            int hi = lo + gen.nextInt(50);
+            Set<Integer> expected = new HashSet<>();
+            for (int j = 0; j < intervals.size(); j++) {
+                if (intervals.get(j)[0] <= hi && intervals.get(j)[1] >= lo) expected.add(j);
+            }
+            Assert.assertEquals(expected, new HashSet<>(testBST.overlapping(lo, hi)));
+            Integer any = testBST.anyOverlapping(lo, hi);
+            if (expected.isEmpty()) Assert.assertNull(any);
+            else Assert.assertTrue(expected.contains(any));
+        }
+    }
+
+    @Test
+    public void testIntervalRemove() {
+        IntervalTree<Integer, Integer> testBST = new IntervalTree<>();
+        List<Integer> lows = ListUtils.genUniqueList(1000, 5000);
+        for (int x : lows) testBST.put(x, x, x + 100);
+        for (int i = 0; i < lows.size() / 2; i++) testBST.remove(lows.get(i));
+        for (int i = 0; i < lows.size(); i++) {
+            int x = lows.get(i);
+            Assert.assertEquals(i >= lows.size() / 2, testBST.overlapping(x + 100, x + 100).contains(x));
+        }
+    }
+
+    @Test
+    public void testIntervalKeyedByLowEndpoint() {
+        IntervalTree<String, Integer> testBST = new IntervalTree<>();
+        try {
+            testBST.put(new IntervalTree.Interval<>("x", 5, 10), 100);
+            Assert.fail("an interval keyed by something other than it's low endpoint should be rejected");
+        } catch (IllegalArgumentException expected) {
+            Assert.assertTrue(testBST.isEmpty());
+        }
+        try {
+            testBST.put(new IntervalTree.Interval<>("x", 10, 5), 10);
+            Assert.fail("an interval with it's endpoints reversed should be rejected");
+        } catch (IllegalArgumentException expected) {
+            Assert.assertTrue(testBST.isEmpty());
+        }
+        testBST.put(new IntervalTree.Interval<>("x", 5, 10), 5);
+        Assert.assertEquals(Collections.singletonList("x"), testBST.overlapping(6, 7));
+    }
+
+    private static long linearSum(Map<Integer, Deque<Long>> elements, int lo, int hi) {
+        long sum = 0;
+        for (Map.Entry<Integer, Deque<Long>> e : elements.entrySet()) {
+            if (e.getKey() < lo || e.getKey() > hi) continue;
+            for (long x : e.getValue()) sum += x;
+        }
+        return sum;
+    }
+}
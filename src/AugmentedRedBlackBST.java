@@ -0,0 +1,191 @@
+/*
+ * A red black tree that maintains a pluggable aggregate over every subtree.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A red black tree in which every node caches the aggregate (as defined by an
+ * Augmentation) of its subtree. The aggregates are refreshed along the insertion or
+ * deletion path and by every rotation, so range aggregates can be answered in O(log n).
+ * Each node also caches the aggregate of it's own objects, so refreshing a node is O(1)
+ * however many duplicates it holds.
+ * @param <T> the type of the object to be inserted
+ * @param <K> the type of the keys associated with the objects
+ * @param <A> the type of the aggregate maintained over each subtree
+ */
+class AugmentedRedBlackBST<T, K extends Comparable, A> extends RedBlackBST<T, K> {
+
+    /** The monoid used to aggregate key-value pairs. */
+    final Augmentation<T, K, A> augmentation;
+
+    AugmentedRedBlackBST(Augmentation<T, K, A> augmentation) {
+        this(augmentation, 0);
+    }
+
+    AugmentedRedBlackBST(Augmentation<T, K, A> augmentation, int poolCapacity) {
+        super(poolCapacity);
+        this.augmentation = augmentation;
+    }
+
+    /**
+     * Returns the aggregate of every key-value pair in the tree. O(1)
+     * @return the aggregate of the entire tree
+     */
+    public A aggregate() {
+        return summary(root);
+    }
+
+    /**
+     * Returns the aggregate of all key-value pairs with lo <= key <= hi. O(log n)
+     * @param lo the least key of the range (inclusive)
+     * @param hi the greatest key of the range (inclusive)
+     * @return the aggregate of the range, or the identity if the range is empty
+     */
+    public A aggregate(K lo, K hi) {
+        Node split = root;
+        while (split != NODE_DNE) { // find the first node inside the range
+            if (cmp(split.getKey(), lo) < 0) split = split.getRightChild();
+            else if (cmp(split.getKey(), hi) > 0) split = split.getLeftChild();
+            else break;
+        }
+        if (split == NODE_DNE) return augmentation.identity();
+
+        A left = augmentation.identity();
+        Node next = split.getLeftChild();
+        while (next != NODE_DNE) { // keys >= lo in the left subtree
+            if (cmp(next.getKey(), lo) >= 0) {
+                left = augmentation.combine(augmentation.combine(self(next), summary(next.getRightChild())), left);
+                next = next.getLeftChild();
+            } else {
+                next = next.getRightChild();
+            }
+        }
+
+        A right = augmentation.identity();
+        next = split.getRightChild();
+        while (next != NODE_DNE) { // keys <= hi in the right subtree
+            if (cmp(next.getKey(), hi) <= 0) {
+                right = augmentation.combine(right, augmentation.combine(summary(next.getLeftChild()), self(next)));
+                next = next.getRightChild();
+            } else {
+                next = next.getLeftChild();
+            }
+        }
+
+        return augmentation.combine(augmentation.combine(left, self(split)), right);
+    }
+
+    /**
+     * Returns the aggregate of all key-value pairs with key <= hi. O(log n)
+     * @param hi the greatest key to include (inclusive)
+     * @return the aggregate of the prefix, or the identity if it is empty
+     */
+    public A headAggregate(K hi) {
+        A acc = augmentation.identity();
+        Node next = root;
+        while (next != NODE_DNE) {
+            if (cmp(next.getKey(), hi) <= 0) {
+                acc = augmentation.combine(acc, augmentation.combine(summary(next.getLeftChild()), self(next)));
+                next = next.getRightChild();
+            } else {
+                next = next.getLeftChild();
+            }
+        }
+        return acc;
+    }
+
+    @Override
+    protected Node newNode(Node parent, T value, K key, Color color) {
+        return new AugNode(parent, value, key, color);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void refresh(Node n) {
+        super.refresh(n);
+        A sub = augmentation.combine(summary(n.getLeftChild()), self(n));
+        ((AugNode) n).summary = augmentation.combine(sub, summary(n.getRightChild()));
+    }
+
+    /**
+     * Returns the cached aggregate of the subtree rooted at n.
+     * @param n the root of the subtree
+     * @return the aggregate of n's subtree, or the identity if n is NODE_DNE
+     */
+    @SuppressWarnings("unchecked")
+    protected A summary(Node n) {
+        return n == NODE_DNE ? augmentation.identity() : ((AugNode) n).summary;
+    }
+
+    /**
+     * Returns the cached aggregate of the values held by n itself (excluding it's
+     * children) in insertion order. O(1)
+     * @param n the node to aggregate
+     * @return the aggregate of n's key-value pairs
+     */
+    @SuppressWarnings("unchecked")
+    protected A self(Node n) {
+        return ((AugNode) n).own();
+    }
+
+    /**
+     * Recomputes n's own aggregate after the objects it holds were modified in place
+     * (rather than pushed or popped), then refreshes every subtree aggregate above it.
+     * O(duplicates + log n)
+     * @param n the node whose objects changed
+     */
+    @SuppressWarnings("unchecked")
+    protected void reliftPath(Node n) {
+        ((AugNode) n).relift();
+        refreshPath(n);
+    }
+
+    class AugNode extends Node {
+
+        private A summary; // aggregate of the subtree rooted at this node
+        /** prefix.get(i) is the aggregate of the first i + 1 values, so a pop is O(1) too. */
+        private final List<A> prefix = new ArrayList<>(1);
+
+        AugNode(Node parentNode, T value, K key, Color nodeColor) {
+            super(parentNode, value, key, nodeColor);
+            relift(); // the super constructor pushed value directly
+        }
+
+        A own() {
+            return prefix.isEmpty() ? augmentation.identity() : prefix.get(prefix.size() - 1);
+        }
+
+        @Override
+        void pushValue(T val) {
+            super.pushValue(val);
+            prefix.add(augmentation.combine(own(), augmentation.lift(getKey(), val)));
+        }
+
+        @Override
+        T popVal() {
+            T val = super.popVal();
+            prefix.remove(prefix.size() - 1);
+            return val;
+        }
+
+        @Override
+        void reset(Node parentNode, T value, K key, Color nodeColor) {
+            super.reset(parentNode, value, key, nodeColor);
+            relift();
+        }
+
+        /**
+         * Rebuilds the prefix aggregates from the values. O(duplicates)
+         */
+        void relift() {
+            prefix.clear();
+            A acc = augmentation.identity();
+            for (T val : getValues()) {
+                acc = augmentation.combine(acc, augmentation.lift(getKey(), val));
+                prefix.add(acc);
+            }
+        }
+    }
+}
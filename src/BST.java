@@ -2,6 +2,10 @@
  * The main class declaration for the binary search tree data type.
  */
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Stack;
 
 /**
@@ -17,6 +21,32 @@ class BST<T, K extends Comparable> {
     final Node NODE_DNE = new Node(null, null, null);
     /** Root is initially NODE_DNE, which defaults to Color.BLACK preserving the red black invariant. */
     Node root = NODE_DNE;
+    /** Cached least and greatest nodes, NODE_DNE while the tree is empty. */
+    Node minNode = NODE_DNE, maxNode = NODE_DNE;
+    /** Unlinked nodes kept for reuse by createNode, null if pooling is disabled. */
+    private final Node[] pool;
+    private int pooled; // number of nodes in pool
+    /** Holds every key in the tree (and keys removed since it was built), null if disabled. */
+    private BloomFilter filter;
+    private double filterRate; // target false positive rate of filter
+    private int filterCapacity; // number of keys filter was sized for
+    private int liveKeys; // number of distinct keys in the tree, tracked while filter is enabled
+    private int staleKeys; // number of keys removed since filter was built
+
+    BST() {
+        this(0);
+    }
+
+    /**
+     * Creates a tree that recycles up to poolCapacity deleted nodes (and their value
+     * stacks) into later insertions, to avoid allocation churn under insert/delete cycles.
+     * @param poolCapacity the maximum number of idle nodes to retain, 0 to disable pooling
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    BST(int poolCapacity) {
+        if (poolCapacity < 0) throw new IllegalArgumentException("Pool capacity cannot be negative.");
+        pool = poolCapacity == 0 ? null : (Node[]) new BST.Node[poolCapacity];
+    }
 
     /**
      * Inserts a object/key pair into the BST. O(n)
@@ -25,7 +55,8 @@ class BST<T, K extends Comparable> {
      */
     public void put(T object, K key) {
         if (root == NODE_DNE) {
-            root = new Node(NODE_DNE, object, key);
+            root = createNode(NODE_DNE, object, key, Color.BLACK);
+            minNode = maxNode = root;
         } else {
             insert(object, key);
         }
@@ -36,10 +67,11 @@ class BST<T, K extends Comparable> {
      * are multiple nodes associated with that key the object associated with the first
      * key value pair that was inserted is returned. O(n)
      * @param key the key associated with the desired object
-     * @return the object in this BST associated with the provided key
+     * @return the object in this BST associated with the provided key, or null if there is none
      */
     public T get(K key) {
-        Node data = search(key, false);
+        if (root == NODE_DNE || (filter != null && !filter.mightContain(key))) return null;
+        Node data = search(key);
         return data.valCount() > 0 ? data.getValue() : null; // return null if node DNE
     }
 
@@ -47,40 +79,57 @@ class BST<T, K extends Comparable> {
      * Removes the node associated with the specified key. If there are multiple nodes
      * associated with that key, nodes are removed in the order they were inserted. O(n)
      * @param key the key associated with node to be removed
+     * @return the removed object, or null if no node is associated with key
      */
     public T remove(K key) {
-        Node rmv = delete(key);
-        return rmv.valCount() > 0 ? rmv.popVal() : null;
+        if (root == NODE_DNE) return null;
+        return popRemoved(delete(key));
     }
 
     /**
      * Gets the value associated with the Node containing the minimum key. If there
      * are multiple nodes associated with that key the object associated with the first
-     * key value pair that was inserted is returned. O(n)
+     * key value pair that was inserted is returned. O(1)
      * @return the object associated with the least key in the tree
      */
     public T min() {
         if (root == NODE_DNE) throw new IllegalStateException("Empty tree.");
-        Node next = root;
-        while (next.getLeftChild() != NODE_DNE) {
-            next = next.getLeftChild();
-        }
-        return next.getValue();
+        return minNode.getValue();
     }
 
     /**
      * Gets the value associated with the Node containing the maximum key. If there
      * are multiple nodes associated with that key the object associated with the first
-     * key value pair that was inserted is returned. O(n)
+     * key value pair that was inserted is returned. O(1)
      * @return the object associated with the greatest key in the tree
      */
     public T max() {
         if (root == NODE_DNE) throw new IllegalStateException("Empty tree.");
-        Node next = root;
-        while (next.getRightChild() != NODE_DNE) {
-            next = next.getRightChild();
-        }
-        return next.getValue();
+        return maxNode.getValue();
+    }
+
+    /**
+     * Removes and returns one object associated with the minimum key, without searching
+     * for it. If there are multiple objects associated with that key they are removed
+     * one at a time, in the same order as remove. The subtree counts are refreshed up to
+     * the root, so this is O(height): O(n) here and O(log n) for a RedBlackBST
+     * @return the removed object, or null if the tree is empty
+     */
+    public T pollMin() {
+        if (root == NODE_DNE) return null;
+        return popRemoved(delete(minNode));
+    }
+
+    /**
+     * Removes and returns one object associated with the maximum key, without searching
+     * for it. If there are multiple objects associated with that key they are removed
+     * one at a time, in the same order as remove. The subtree counts are refreshed up to
+     * the root, so this is O(height): O(n) here and O(log n) for a RedBlackBST
+     * @return the removed object, or null if the tree is empty
+     */
+    public T pollMax() {
+        if (root == NODE_DNE) return null;
+        return popRemoved(delete(maxNode));
     }
 
     /**
@@ -96,9 +145,57 @@ class BST<T, K extends Comparable> {
         return rankN.getValue();
     }
 
+    /**
+     * Returns the number of objects associated with keys strictly less than key, so
+     * select(rank(key) + 1) is associated with key if key is in the tree. O(n)
+     * @param key the key to rank
+     * @return the number of objects with a lesser key
+     */
+    public int rank(K key) {
+        int rank = 0;
+        Node next = root;
+        while (next != NODE_DNE) {
+            int kCmp = cmp(next.getKey(), key);
+            if (kCmp < 0) {
+                rank += next.getLeftChild().getNodeCount() + next.valCount();
+                next = next.getRightChild();
+            } else {
+                if (kCmp == 0) return rank + next.getLeftChild().getNodeCount();
+                next = next.getLeftChild();
+            }
+        }
+        return rank;
+    }
+
     public int size() { return root.getNodeCount(); }
     public boolean isEmpty() { return root == NODE_DNE; }
-    public boolean contains(K key) { return search(key, false) != null; }
+    public boolean contains(K key) {
+        if (root == NODE_DNE || (filter != null && !filter.mightContain(key))) return false;
+        return search(key) != NODE_DNE;
+    }
+
+    /**
+     * Maintains a Bloom filter of the keys in the tree so that get and contains answer
+     * most lookups of absent keys without descending the tree. Removed keys stay in the
+     * filter, so it is rebuilt from the tree once more keys have been removed than remain,
+     * and resized when the tree outgrows it; both are amortized O(1) per update. The keys'
+     * hashCode must be consistent with their compareTo. O(n)
+     * @param falsePositiveRate the target fraction of absent keys that still descend the tree
+     */
+    public void enableFilter(double falsePositiveRate) {
+        filterRate = falsePositiveRate;
+        rebuildFilter();
+    }
+
+    public void disableFilter() { filter = null; }
+
+    /**
+     * @return the estimated fraction of absent keys the filter fails to rule out
+     */
+    public double filterFalsePositiveRate() {
+        if (filter == null) throw new IllegalStateException("Filter is disabled.");
+        return filter.falsePositiveRate();
+    }
 
     /**
      * Gets the object associated with the next least key (in relation to the parameter).
@@ -108,10 +205,54 @@ class BST<T, K extends Comparable> {
      * @return the object associated with next least key, if it exists, if not null
      */
     public T predecessor(K key) {
-        Node pred = nextLeastNode(search(key, false));
+        Node pred = nextLeastNode(search(key));
         return pred == NODE_DNE ? null : pred.getValue();
     }
 
+    /**
+     * Copies this tree into an immutable FrozenBST laid out in contiguous arrays, for
+     * trees that become read-only. Later changes to this tree are not reflected. O(n)
+     * @return a frozen copy of this tree
+     */
+    public FrozenBST<T, K> freeze() {
+        List<K> keys = new ArrayList<>();
+        List<List<T>> values = new ArrayList<>();
+        for (Node n : inOrder(null, null)) {
+            keys.add(n.getKey());
+            values.add(n.getValues());
+        }
+        return new FrozenBST<>(keys, values);
+    }
+
+    /**
+     * Collects the nodes with keys in [lo, hi] in ascending key order, skipping subtrees
+     * that lie entirely outside the range. Iterative, an unbalanced BST may be deep. O(n)
+     * @param lo the least key to include, or null for no lower bound
+     * @param hi the greatest key to include, or null for no upper bound
+     * @return the nodes in range, least key first
+     */
+    protected List<Node> inOrder(K lo, K hi) {
+        List<Node> nodes = new ArrayList<>();
+        Deque<Node> path = new ArrayDeque<>();
+        Node next = root;
+        while (next != NODE_DNE || !path.isEmpty()) {
+            while (next != NODE_DNE) {
+                if (lo != null && cmp(next.getKey(), lo) < 0) {
+                    next = next.getRightChild(); // next and it's left subtree are below lo
+                } else {
+                    path.push(next);
+                    next = next.getLeftChild();
+                }
+            }
+            if (path.isEmpty()) break;
+            next = path.pop();
+            if (hi != null && cmp(next.getKey(), hi) > 0) break;
+            nodes.add(next);
+            next = next.getRightChild();
+        }
+        return nodes;
+    }
+
     /**
      * Inserts an object by finding it's place via binary search and creating
      * a new node. If a node already exists with the given key, the value is
@@ -124,17 +265,19 @@ class BST<T, K extends Comparable> {
         int kCmp;
         do {
             kCmp = cmp(next.getKey(), key);
-            next.incrementNodeCount(1);
             last = next;
             next = kCmp < 0 ? next.getRightChild() : next.getLeftChild();
         } while (kCmp != 0 && next != NODE_DNE);
 
-        if (kCmp == 0)
+        if (kCmp == 0) {
             last.pushValue(object);
-        else if (kCmp < 0)
-            last.setRightChild(new Node(last, object, key));
-        else
-            last.setLeftChild(new Node(last, object, key));
+        } else {
+            Node insert = createNode(last, object, key, Color.BLACK);
+            if (kCmp < 0) last.setRightChild(insert);
+            else last.setLeftChild(insert);
+            trackBounds(insert);
+        }
+        refreshPath(last);
     }
 
     /**
@@ -143,18 +286,31 @@ class BST<T, K extends Comparable> {
      * @return the node was that deleted, or NODE_DNE if no Node with the specified key exists
      */
     protected Node delete(K key) {
-        Node curr = search(key, true); // decrement while traversing during search
+        return delete(search(key));
+    }
+
+    /**
+     * Unlinks curr from the tree, unless it holds more than one object in which case the
+     * caller only pops a duplicate. O(n)
+     * @param curr the node to delete, or NODE_DNE
+     * @return the node was that deleted, or NODE_DNE if curr was NODE_DNE
+     */
+    protected Node delete(Node curr) {
+        Node fix;
         if (curr.valCount() > 1 || curr == NODE_DNE) return curr;
+        untrackBounds(curr);
 
         if (curr.isLeaf()) {
+            fix = curr.getParent();
             supplant(curr, NODE_DNE);
         } else if (curr.childCount() == 1) {
+            fix = curr.getParent();
             Node child = curr.getRightChild() == NODE_DNE ? curr.getLeftChild() : curr.getRightChild();
             supplant(curr, child);
         } else {
             Node scr = localMin(curr.getRightChild()); // can also be localMax(n.getLeftChild)
+            fix = scr.getParent() == curr ? scr : scr.getParent();
             supplant(scr, scr.getRightChild());
-            scr.setNodeCount(curr.getNodeCount() - 1);
             supplant(curr, scr);
 
             curr.getLeftChild().setParentNode(scr);
@@ -163,6 +319,7 @@ class BST<T, K extends Comparable> {
             scr.setLeftChild(curr.getLeftChild());
         }
 
+        refreshPath(fix);
         return curr;
     }
 
@@ -194,22 +351,38 @@ class BST<T, K extends Comparable> {
         return next;
     }
 
+    /**
+     * Returns the node with the least key strictly greater than key. O(n)
+     * @param key the key to compare against, which need not be in the tree
+     * @return the node with the next greatest key, or NODE_DNE if there is none
+     */
+    protected Node higherNode(K key) {
+        Node higher = NODE_DNE, next = root;
+        while (next != NODE_DNE) {
+            if (cmp(next.getKey(), key) > 0) {
+                higher = next;
+                next = next.getLeftChild();
+            } else {
+                next = next.getRightChild();
+            }
+        }
+        return higher;
+    }
+
     /**
      * Searches for the node corresponding to the given key (binary search). If multiple
      * such key-value pairs exist, the value associated with the first key-value pair
      * inserted will be returned. O(n)
      * @param key the key associated with desired node
-     * @param dec flag to indicate whether to decrement node count during traversal
      * @return the Node associated with that Key, or NODE_DNE if none exists
      */
-    protected Node search(K key, boolean dec) {
+    protected Node search(K key) {
         if (root == NODE_DNE) throw new IllegalStateException("Cannot search an empty tree.");
         Node next = root;
-        int kCmp = cmp(root.getKey(), key);
-        while(kCmp != 0 && next != NODE_DNE) {
-            if (dec) next.decrementNodeCount(1);
+        while (next != NODE_DNE) {
+            int kCmp = cmp(next.getKey(), key);
+            if (kCmp == 0) break;
             next = kCmp < 0 ? next.getRightChild() : next.getLeftChild();
-            kCmp = cmp(next.getKey(), key);
         }
         return next;
     }
@@ -231,6 +404,148 @@ class BST<T, K extends Comparable> {
         if (in != NODE_DNE) in.setParentNode(out.getParent());
     }
 
+    /**
+     * Pops an object from a node returned by delete, refreshing the path above the node
+     * if it remains in the tree holding further duplicates.
+     * @param rmv the node returned by delete
+     * @return the popped object, or null if rmv is NODE_DNE
+     */
+    private T popRemoved(Node rmv) {
+        if (rmv.valCount() == 0) return null;
+        T val = rmv.popVal();
+        if (rmv.valCount() > 0) {
+            refreshPath(rmv); // duplicate popped, node remains in the tree
+        } else {
+            if (filter != null) filterRemoved();
+            recycle(rmv);
+        }
+        return val;
+    }
+
+    /**
+     * Sizes a new filter for twice the current keys (at least 64) and adds every key. O(n)
+     */
+    private void rebuildFilter() {
+        List<Node> nodes = inOrder(null, null);
+        filterCapacity = Math.max(2 * nodes.size(), 64);
+        filter = new BloomFilter(filterCapacity, filterRate);
+        for (Node n : nodes) filter.add(n.getKey());
+        liveKeys = nodes.size();
+        staleKeys = 0;
+    }
+
+    /**
+     * Records a key about to be linked into the tree, growing the filter first if the
+     * key would put it over capacity.
+     */
+    private void filterAdded(K key) {
+        if (liveKeys == filterCapacity) rebuildFilter(); // key's node is not linked yet
+        filter.add(key);
+        liveKeys++;
+    }
+
+    /**
+     * Records a key unlinked from the tree, rebuilding the filter once the stale keys
+     * it still holds outnumber the live ones.
+     */
+    private void filterRemoved() {
+        liveKeys--;
+        if (++staleKeys > Math.max(liveKeys, 64)) rebuildFilter();
+    }
+
+    /**
+     * Returns an unlinked node to the pool, clearing it so it retains no objects. Nodes
+     * are dropped for the garbage collector once the pool is full.
+     * @param n the node that was unlinked by delete
+     */
+    private void recycle(Node n) {
+        if (pool == null || pooled == pool.length) return;
+        n.reset(null, null, null, Color.BLACK);
+        pool[pooled++] = n;
+    }
+
+    /**
+     * @return the number of idle nodes currently held in the pool
+     */
+    int pooledNodes() { return pooled; }
+
+    /**
+     * Updates the cached min and max nodes after n has been linked into the tree. O(1)
+     * @param n the newly linked node
+     */
+    protected void trackBounds(Node n) {
+        if (cmp(n.getKey(), minNode.getKey()) < 0) minNode = n;
+        if (cmp(n.getKey(), maxNode.getKey()) > 0) maxNode = n;
+    }
+
+    /**
+     * Moves the cached min and max nodes off of n before n is unlinked. The min node has
+     * no left child, so it's successor is the least node of it's right subtree or else it's
+     * parent (symmetrically for max). Rotations never change which node is min or max. O(1)
+     * @param n the node about to be unlinked
+     */
+    protected void untrackBounds(Node n) {
+        if (n == minNode) minNode = n.getRightChild() != NODE_DNE ? localMin(n.getRightChild()) : n.getParent();
+        if (n == maxNode) maxNode = n.getLeftChild() != NODE_DNE ? localMax(n.getLeftChild()) : n.getParent();
+    }
+
+    /**
+     * Creates a node for a newly inserted key, reusing a pooled node if one is available.
+     * @param parent the parent of the new node
+     * @param value the first object associated with key
+     * @param key the key of the new node
+     * @param color the initial color of the node
+     * @return a node whose subtree augmentation is up to date
+     */
+    protected Node createNode(Node parent, T value, K key, Color color) {
+        Node n;
+        if (pooled > 0) {
+            n = pool[--pooled];
+            pool[pooled] = null;
+            n.reset(parent, value, key, color);
+        } else {
+            n = newNode(parent, value, key, color);
+        }
+        refresh(n);
+        if (filter != null) filterAdded(key);
+        return n;
+    }
+
+    /**
+     * Allocates a node. Subclasses that store additional per-node state override this
+     * to return their own Node type.
+     * @param parent the parent of the new node
+     * @param value the first object associated with key
+     * @param key the key of the new node
+     * @param color the initial color of the node
+     * @return a newly allocated node
+     */
+    protected Node newNode(Node parent, T value, K key, Color color) {
+        return new Node(parent, value, key, color);
+    }
+
+    /**
+     * Recomputes the subtree augmentation (by default the node count) of n from
+     * n's own values and the augmentation of its children. Every structural change
+     * calls this bottom-up so that subclasses can maintain further aggregates. O(1)
+     * @param n the node to update, never NODE_DNE
+     */
+    protected void refresh(Node n) {
+        n.setNodeCount(n.getLeftChild().getNodeCount() + n.valCount() + n.getRightChild().getNodeCount());
+    }
+
+    /**
+     * Calls refresh on n and every ancestor of n up to the root.
+     * @param n the lowest node whose subtree changed
+     */
+    protected void refreshPath(Node n) {
+        Node next = n;
+        while (next != NODE_DNE) {
+            refresh(next);
+            next = next.getParent();
+        }
+    }
+
     /**
      * Compares to K key values by calling compareTo
      * @param key1 the first key to be compared
@@ -243,16 +558,26 @@ class BST<T, K extends Comparable> {
     }
 
     /**
-     * Recursively traverses the tree searching for the nth smallest key.
-     * @param n the order of key to search for
-     * @param next the Node to process (initially root)
+     * Traverses the tree searching for the nth smallest key without recursion
+     * or allocation.
+     * @param n the order of key to search for (0 based)
+     * @param from the Node to begin the search at (initially root)
      * @return the Node associated with the nth smallest key
      */
-    private Node select(int n, Node next) {
-        int lSize = next.getLeftChild().getNodeCount();
-        if (n < lSize) return select(n, next.getLeftChild());
-        else if (n > lSize + next.valCount() - 1) return select(n - lSize - next.valCount(), next.getRightChild());
-        else return next;
+    protected Node select(int n, Node from) {
+        Node next = from;
+        int rem = n;
+        while (true) {
+            int lSize = next.getLeftChild().getNodeCount();
+            if (rem < lSize) {
+                next = next.getLeftChild();
+            } else if (rem > lSize + next.valCount() - 1) {
+                rem -= lSize + next.valCount();
+                next = next.getRightChild();
+            } else {
+                return next;
+            }
+        }
     }
 
     /**
@@ -294,9 +619,9 @@ class BST<T, K extends Comparable> {
         private Node leftChild = NODE_DNE;
         private Node rightChild = NODE_DNE;
         private Stack<T> values = new Stack<>(); // maintain a list of objects corresponding to duplicate keys
-        private final K key;
+        private K key;
         private Color nodeColor = Color.BLACK;
-        private int nodeCount; // size of subtree rooted at this node
+        private int nodeCount; // number of objects (duplicates included) in the subtree rooted at this node
 
         Node(Node parentNode, T value, K key) {
             this.parentNode = parentNode;
@@ -314,6 +639,21 @@ class BST<T, K extends Comparable> {
             this.nodeColor = nodeColor;
         }
 
+        /**
+         * Reinitializes a pooled node as a new, childless node. Only the value stack
+         * is kept, emptied, so that reuse allocates nothing.
+         */
+        void reset(Node parentNode, T value, K key, Color nodeColor) {
+            this.parentNode = parentNode;
+            this.leftChild = NODE_DNE;
+            this.rightChild = NODE_DNE;
+            this.values.clear();
+            if (value != null) this.values.push(value);
+            this.key = key;
+            this.nodeColor = nodeColor;
+            this.nodeCount = 0;
+        }
+
         Node getParent() { return parentNode; }
         Node getGrandParent() { return parentNode.getParent(); }
         Node getLeftChild() { return leftChild; }
@@ -325,6 +665,7 @@ class BST<T, K extends Comparable> {
 
         int valCount() { return values.size(); }
         T getValue() { return values.peek(); }
+        Stack<T> getValues() { return values; }
         T popVal()     { return values.pop(); }
         void pushValue(T val) { values.push(val); }
         K getKey() { return key; }
@@ -333,9 +674,6 @@ class BST<T, K extends Comparable> {
         int getNodeCount() { return nodeCount; }
         void setNodeCount(int n) { nodeCount = n; }
 
-        void incrementNodeCount(int n) { nodeCount += n; }
-        void decrementNodeCount(int n) { nodeCount -= n; }
-
         boolean isLeaf() { return rightChild == NODE_DNE && leftChild == NODE_DNE; }
         boolean isRightChild() { return parentNode.rightChild == this; }
         boolean isLeftChild() { return parentNode.leftChild == this; }
@@ -103,6 +103,53 @@ public class BSTTests {
         }
     }
 
+    @Test
+    public void testPollMinMax() {
+        TestBST<Integer, Integer> testBST = new TestBST<>();
+        PriorityQueue<Integer> minQueue = new PriorityQueue<>();
+        PriorityQueue<Integer> maxQueue = new PriorityQueue<>(Collections.reverseOrder());
+        Random gen = new Random();
+        for (int i = 0; i < 20000; i++) {
+            if (gen.nextInt(3) == 0) {
+                Integer expectedMin = minQueue.poll();
+                Assert.assertEquals(expectedMin, testBST.pollMin());
+                if (expectedMin != null) maxQueue.remove(expectedMin);
+            } else if (gen.nextInt(3) == 0) {
+                Integer expectedMax = maxQueue.poll();
+                Assert.assertEquals(expectedMax, testBST.pollMax());
+                if (expectedMax != null) minQueue.remove(expectedMax);
+            } else {
+                int x = gen.nextInt(1000);
+                testBST.put(x, x);
+                minQueue.add(x);
+                maxQueue.add(x);
+            }
+            if (!minQueue.isEmpty()) {
+                Assert.assertEquals(minQueue.peek(), testBST.min());
+                Assert.assertEquals(maxQueue.peek(), testBST.max());
+            }
+            Assert.assertEquals(minQueue.size(), testBST.size());
+        }
+        Assert.assertTrue(testBST.isValidBST());
+    }
+
+    @Test
+    public void testFilteredMisses() {
+        TestBST<Integer, Integer> testBST = new TestBST<>();
+        Assert.assertNull(testBST.get(1)); // empty tree
+        Assert.assertFalse(testBST.contains(1));
+        testBST.enableFilter(0.01);
+        List<Integer> elements = ListUtils.genIntList(2000, 1000);
+        for (int x : elements) testBST.put(x, x);
+        for (int x = 0; x < 1000; x++) Assert.assertEquals(elements.contains(x), testBST.contains(x));
+        for (int x : elements) Assert.assertEquals((Integer) x, testBST.remove(x)); // churn, all keys stale
+        for (int x = 0; x < 1000; x++) Assert.assertNull(testBST.get(x));
+        Assert.assertTrue(testBST.isEmpty());
+        Assert.assertTrue(testBST.filterFalsePositiveRate() < 0.01); // rebuilt, at most 64 stale keys remain
+        testBST.disableFilter();
+        Assert.assertNull(testBST.get(5));
+    }
+
     /**
      * A special case of the BST class that includes methods to determine
      * whether the current instance upholds the BST property (every element
@@ -0,0 +1,180 @@
+/*
+ * An executor that answers batches of independent lookups against a BST.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executes batches of get, select and predecessor queries against a BST. Each batch is
+ * sorted (keyed queries by key, select queries by rank) so consecutive queries descend
+ * shared, cache warm paths, and large batches are split into contiguous chunks that run
+ * on the supplied executor. Any Executor may be used, e.g. a ForkJoinPool or, on JDK 21+,
+ * Executors.newVirtualThreadPerTaskExecutor(). The tree must not be modified while a
+ * batch is executing.
+ * @param <T> the type of the objects in the tree
+ * @param <K> the type of the keys associated with the objects
+ */
+class BatchQueryExecutor<T, K extends Comparable> {
+
+    /** The default number of queries below which a batch runs on the calling thread. */
+    static final int DEFAULT_PARALLEL_THRESHOLD = 512;
+    /** The default number of queries per chunk submitted to the executor. */
+    static final int DEFAULT_CHUNK_SIZE = 256;
+
+    private final BST<T, K> tree;
+    private final Executor executor;
+    private final int parallelThreshold;
+    private final int chunkSize;
+
+    BatchQueryExecutor(BST<T, K> tree) {
+        this(tree, ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param tree the tree to query
+     * @param executor the executor that runs the chunks of large batches
+     * @param parallelThreshold the batch size at which chunks are submitted to executor
+     * @param chunkSize the number of queries per submitted chunk
+     */
+    BatchQueryExecutor(BST<T, K> tree, Executor executor, int parallelThreshold, int chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive.");
+        this.tree = tree;
+        this.executor = executor;
+        this.parallelThreshold = parallelThreshold;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Executes every query in the batch. A query that throws (e.g. the predecessor
+     * of a missing key) completes it's own future exceptionally without affecting the
+     * rest of the batch. If the executor rejects a chunk, the queries not yet submitted
+     * complete exceptionally with the RejectedExecutionException.
+     * @param queries the queries to execute
+     * @return a future for each query, in the same order as queries
+     */
+    public List<CompletableFuture<T>> execute(List<Query<K>> queries) {
+        List<CompletableFuture<T>> results = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) results.add(new CompletableFuture<>());
+
+        Integer[] order = new Integer[queries.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, new QueryOrder(queries));
+
+        if (order.length < parallelThreshold) {
+            run(queries, results, order, 0, order.length);
+        } else {
+            for (int from = 0; from < order.length; from += chunkSize) {
+                final int start = from, end = Math.min(order.length, from + chunkSize);
+                try {
+                    executor.execute(() -> run(queries, results, order, start, end));
+                } catch (RejectedExecutionException e) {
+                    for (int i = start; i < order.length; i++) results.get(order[i]).completeExceptionally(e);
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Executes every query in the batch and waits for all of them.
+     * @param queries the queries to execute
+     * @return a future completed with every result in the same order as queries
+     */
+    public CompletableFuture<List<T>> executeAll(List<Query<K>> queries) {
+        List<CompletableFuture<T>> results = execute(queries);
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<T> all = new ArrayList<>(results.size());
+            for (CompletableFuture<T> f : results) all.add(f.join());
+            return all;
+        });
+    }
+
+    /**
+     * Executes the sorted queries order[from, to) on the current thread.
+     */
+    private void run(List<Query<K>> queries, List<CompletableFuture<T>> results, Integer[] order, int from, int to) {
+        for (int i = from; i < to; i++) {
+            Query<K> q = queries.get(order[i]);
+            try {
+                results.get(order[i]).complete(answer(q));
+            } catch (RuntimeException e) {
+                results.get(order[i]).completeExceptionally(e);
+            }
+        }
+    }
+
+    private T answer(Query<K> q) {
+        switch (q.type) {
+            case GET:
+                return tree.isEmpty() ? null : tree.get(q.key);
+            case SELECT:
+                return tree.select(q.rank);
+            default:
+                return tree.predecessor(q.key);
+        }
+    }
+
+    /**
+     * A single lookup against the tree.
+     * @param <K> the type of the key being looked up
+     */
+    static class Query<K> {
+
+        enum Type {GET, SELECT, PREDECESSOR}
+
+        private final Type type;
+        private final K key;
+        private final int rank;
+
+        private Query(Type type, K key, int rank) {
+            this.type = type;
+            this.key = key;
+            this.rank = rank;
+        }
+
+        static <K> Query<K> get(K key) { return new Query<>(Type.GET, requireKey(key), 0); }
+        static <K> Query<K> select(int rank) { return new Query<>(Type.SELECT, null, rank); }
+        static <K> Query<K> predecessor(K key) { return new Query<>(Type.PREDECESSOR, requireKey(key), 0); }
+
+        /**
+         * Rejects null keys up front, as sorting the batch compares every key.
+         */
+        private static <K> K requireKey(K key) {
+            if (key == null) throw new IllegalArgumentException("Query key cannot be null.");
+            return key;
+        }
+
+        Type getType() { return type; }
+        K getKey() { return key; }
+        int getRank() { return rank; }
+    }
+
+    /**
+     * Orders keyed queries by key, placing them before select queries ordered by rank.
+     */
+    private class QueryOrder implements Comparator<Integer> {
+
+        private final List<Query<K>> queries;
+
+        QueryOrder(List<Query<K>> queries) {
+            this.queries = queries;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(Integer i, Integer j) {
+            Query<K> a = queries.get(i), b = queries.get(j);
+            boolean aSel = a.type == Query.Type.SELECT, bSel = b.type == Query.Type.SELECT;
+            if (aSel != bSel) return aSel ? 1 : -1;
+            return aSel ? Integer.compare(a.rank, b.rank) : a.key.compareTo(b.key);
+        }
+    }
+}
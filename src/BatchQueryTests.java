@@ -0,0 +1,109 @@
+/*
+ * A set of unit tests covering the batch query executor.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+import util.ListUtils;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A set of unit tests comparing batched results against issuing each query directly.
+ */
+public class BatchQueryTests {
+
+    @Test
+    public void testMatchesDirectCalls() throws Exception {
+        RedBlackBST<Integer, Integer> testBST = new RedBlackBST<>();
+        List<Integer> elements = ListUtils.genUniqueList(5000, 100000);
+        for (int x : elements) testBST.put(x, x);
+        Collections.sort(elements);
+
+        List<BatchQueryExecutor.Query<Integer>> queries = new ArrayList<>();
+        List<Integer> expected = new ArrayList<>();
+        Random gen = new Random();
+        for (int i = 0; i < 3000; i++) {
+            int x = elements.get(gen.nextInt(elements.size()));
+            switch (i % 3) {
+                case 0:
+                    queries.add(BatchQueryExecutor.Query.get(gen.nextBoolean() ? x : -1));
+                    expected.add(testBST.get(queries.get(i).getKey()));
+                    break;
+                case 1:
+                    queries.add(BatchQueryExecutor.Query.select(1 + gen.nextInt(elements.size())));
+                    expected.add(testBST.select(queries.get(i).getRank()));
+                    break;
+                default:
+                    queries.add(BatchQueryExecutor.Query.predecessor(x));
+                    expected.add(testBST.predecessor(x));
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            BatchQueryExecutor<Integer, Integer> parallel = new BatchQueryExecutor<>(testBST, pool, 64, 128);
+            Assert.assertEquals(expected, parallel.executeAll(queries).get());
+            BatchQueryExecutor<Integer, Integer> inline = new BatchQueryExecutor<>(testBST, pool, Integer.MAX_VALUE, 128);
+            Assert.assertEquals(expected, inline.executeAll(queries).get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedQueryIsIsolated() {
+        BST<String, Integer> testBST = new BST<>();
+        testBST.put("one", 1);
+        testBST.put("two", 2);
+        BatchQueryExecutor<String, Integer> executor = new BatchQueryExecutor<>(testBST);
+        List<CompletableFuture<String>> results = executor.execute(Arrays.asList(
+                BatchQueryExecutor.Query.<Integer>predecessor(5),
+                BatchQueryExecutor.Query.<Integer>get(2),
+                BatchQueryExecutor.Query.<Integer>select(1)));
+        try {
+            results.get(0).get();
+            Assert.fail("predecessor of a missing key should fail");
+        } catch (ExecutionException | InterruptedException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        Assert.assertEquals("two", results.get(1).join());
+        Assert.assertEquals("one", results.get(2).join());
+    }
+
+    @Test
+    public void testNullKeyRejected() {
+        try {
+            BatchQueryExecutor.Query.<Integer>get(null);
+            Assert.fail("a null key should be rejected when the query is built");
+        } catch (IllegalArgumentException expected) {
+            // rejected
+        }
+    }
+
+    @Test
+    public void testRejectedChunksCompleteExceptionally() {
+        RedBlackBST<Integer, Integer> testBST = new RedBlackBST<>();
+        for (int i = 0; i < 100; i++) testBST.put(i, i);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        pool.shutdown(); // rejects every chunk
+        BatchQueryExecutor<Integer, Integer> executor = new BatchQueryExecutor<>(testBST, pool, 0, 16);
+        List<BatchQueryExecutor.Query<Integer>> queries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) queries.add(BatchQueryExecutor.Query.get(i));
+        List<CompletableFuture<Integer>> results = executor.execute(queries);
+        for (CompletableFuture<Integer> f : results) {
+            try {
+                f.join();
+                Assert.fail("queries of rejected chunks should fail");
+            } catch (CompletionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+    }
+}
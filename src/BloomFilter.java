@@ -0,0 +1,95 @@
+/*
+ * A fixed size Bloom filter for answering "definitely absent" membership queries.
+ */
+
+import java.util.Arrays;
+
+/**
+ * A probabilistic set of keys with no false negatives: mightContain returns false only for
+ * keys that were never added, and true for added keys plus a tunable fraction of others.
+ * Keys are hashed with hashCode, so it must be consistent with the keys' compareTo.
+ * The k bit positions of a key are derived by double hashing from one 64 bit mix.
+ */
+class BloomFilter {
+
+    private final long[] bits;
+    private final int numBits;
+    private final int numHashes;
+    private int added; // number of add calls since the last clear
+
+    /**
+     * Sizes the filter so that after expectedKeys insertions about falsePositiveRate of
+     * absent keys are reported as possibly present.
+     * @param expectedKeys the number of keys the filter is sized for
+     * @param falsePositiveRate the target false positive rate, in (0, 1)
+     */
+    BloomFilter(int expectedKeys, double falsePositiveRate) {
+        if (expectedKeys < 0) throw new IllegalArgumentException("Expected keys cannot be negative.");
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) throw new IllegalArgumentException("False positive rate must be between 0 and 1.");
+        int n = Math.max(expectedKeys, 1);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        numBits = (int) Math.min(Math.max(m, 64), Integer.MAX_VALUE - 63);
+        numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+        bits = new long[(numBits + 63) >>> 6];
+    }
+
+    /**
+     * @param key the key to add, not null
+     */
+    public void add(Object key) {
+        long h = mix(key.hashCode());
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1; // odd, never 0, so the k probes are not all one bit
+        for (int i = 0; i < numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        added++;
+    }
+
+    /**
+     * @param key the key to test, not null
+     * @return false if key was definitely never added, true if it may have been
+     */
+    public boolean mightContain(Object key) {
+        long h = mix(key.hashCode());
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1; // odd, never 0, so the k probes are not all one bit
+        for (int i = 0; i < numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes every key, Bloom filters cannot remove a single one.
+     */
+    public void clear() {
+        Arrays.fill(bits, 0L);
+        added = 0;
+    }
+
+    /**
+     * Estimates the current false positive rate from the fraction of set bits, which
+     * also accounts for keys added beyond the expected number.
+     * @return the probability that mightContain is true for a key never added
+     */
+    public double falsePositiveRate() {
+        long set = 0;
+        for (long word : bits) set += Long.bitCount(word);
+        return Math.pow((double) set / numBits, numHashes);
+    }
+
+    public int added() { return added; }
+    public int numBits() { return numBits; }
+    public int numHashes() { return numHashes; }
+
+    /**
+     * Spreads a 32 bit hash code over 64 bits (the splitmix64 finalizer).
+     */
+    private static long mix(int hash) {
+        long z = hash * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * An immutable, array based snapshot of a BST laid out for cache efficient search.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A read-only copy of a BST stored in contiguous arrays instead of linked nodes. The keys
+ * are laid out in Eytzinger (breadth first) order, so the first levels of every search
+ * share a few cache lines and the descent i = 2i + (key[i] < key) has no data dependent
+ * branch. Alongside it, arrays in sorted order hold each key's objects and the cumulative
+ * object counts used by select, rank and predecessor. Created by BST.freeze.
+ * @param <T> the type of the objects in the tree
+ * @param <K> the type of the keys associated with the objects
+ */
+class FrozenBST<T, K extends Comparable> {
+
+    private final int n; // number of distinct keys
+    /** Keys in Eytzinger order, index 0 unused. */
+    private final Object[] eKeys;
+    /** The sorted position of the key at each Eytzinger index. */
+    private final int[] eRank;
+    /** The objects of every key in sorted order, each in insertion order. */
+    private final Object[][] values;
+    /** counts[i] is the number of objects associated with the i least keys. */
+    private final int[] counts;
+
+    /**
+     * @param keys the distinct keys in ascending order
+     * @param values the objects of each key in insertion order, parallel to keys
+     */
+    FrozenBST(List<K> keys, List<List<T>> values) {
+        n = keys.size();
+        eKeys = new Object[n + 1];
+        eRank = new int[n + 1];
+        this.values = new Object[n][];
+        counts = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            this.values[i] = values.get(i).toArray();
+            counts[i + 1] = counts[i] + this.values[i].length;
+        }
+        layout(keys, 1, 0);
+    }
+
+    /**
+     * Gets the most recently inserted object associated with key. O(log n)
+     * @param key the key associated with the desired object
+     * @return the object associated with key, or null if there is none
+     */
+    public T get(K key) {
+        int i = lowerBound(key);
+        return i != 0 && cmp(key(i), key) == 0 ? top(eRank[i]) : null;
+    }
+
+    /**
+     * @param key the key associated with the desired objects
+     * @return every object associated with key in insertion order, empty if there are none
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getAll(K key) {
+        int i = lowerBound(key);
+        if (i == 0 || cmp(key(i), key) != 0) return new ArrayList<>();
+        return (List<T>) new ArrayList<>(Arrays.asList(values[eRank[i]]));
+    }
+
+    /**
+     * Returns the object associated with the nth smallest key, binary searching the
+     * cumulative counts. O(log n)
+     * @param rank the rank of the desired element (least - greatest)
+     * @return the element with the nth smallest key
+     */
+    public T select(int rank) {
+        if (rank <= 0 || rank > size()) throw new IllegalArgumentException("Rank cannot be less than 0 or greater than the size of the BST.");
+        int lo = 0, hi = n - 1;
+        while (lo < hi) { // least i such that counts[i + 1] >= rank
+            int mid = (lo + hi) >>> 1;
+            if (counts[mid + 1] < rank) lo = mid + 1;
+            else hi = mid;
+        }
+        return top(lo);
+    }
+
+    /**
+     * @param key the key to rank, which need not be in the tree
+     * @return the number of objects associated with keys strictly less than key
+     */
+    public int rank(K key) {
+        return counts[sortedLowerBound(key)];
+    }
+
+    /**
+     * Gets the object associated with the greatest key strictly less than key. O(log n)
+     * @param key the key to compare against, which need not be in the tree
+     * @return the object associated with next least key, if it exists, if not null
+     */
+    public T predecessor(K key) {
+        int s = sortedLowerBound(key);
+        return s == 0 ? null : top(s - 1);
+    }
+
+    public T min() {
+        if (n == 0) throw new IllegalStateException("Empty tree.");
+        return top(0);
+    }
+
+    public T max() {
+        if (n == 0) throw new IllegalStateException("Empty tree.");
+        return top(n - 1);
+    }
+
+    public int size() { return counts[n]; }
+    public boolean isEmpty() { return n == 0; }
+    public boolean contains(K key) { return get(key) != null; }
+
+    /**
+     * Descends the Eytzinger array without branching on the comparison, then recovers
+     * the last node where the search went left by stripping the trailing right turns.
+     * @param key the key to search for
+     * @return the Eytzinger index of the least key >= key, or 0 if there is none
+     */
+    private int lowerBound(K key) {
+        int i = 1;
+        while (i <= n) i = 2 * i + (cmp(key(i), key) < 0 ? 1 : 0);
+        return i >>> (Integer.numberOfTrailingZeros(~i) + 1);
+    }
+
+    /**
+     * @param key the key to search for
+     * @return the sorted position of the least key >= key, or n if there is none
+     */
+    private int sortedLowerBound(K key) {
+        int i = lowerBound(key);
+        return i == 0 ? n : eRank[i];
+    }
+
+    /**
+     * Fills the Eytzinger array by an in-order traversal of the implicit tree rooted at i.
+     * @param keys the keys in ascending order
+     * @param i the Eytzinger index of the subtree root
+     * @param next the sorted position of the next key to place
+     * @return the sorted position of the next key to place after this subtree
+     */
+    private int layout(List<K> keys, int i, int next) {
+        if (i > n) return next;
+        next = layout(keys, 2 * i, next);
+        eKeys[i] = keys.get(next);
+        eRank[i] = next;
+        return layout(keys, 2 * i + 1, next + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private K key(int i) { return (K) eKeys[i]; }
+
+    @SuppressWarnings("unchecked")
+    private T top(int s) { return (T) values[s][values[s].length - 1]; }
+
+    @SuppressWarnings("unchecked")
+    private int cmp(K key1, K key2) {
+        return key1.compareTo(key2);
+    }
+}
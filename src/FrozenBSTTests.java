@@ -0,0 +1,60 @@
+/*
+ * A set of unit tests covering frozen (array based) BSTs.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+import util.ListUtils;
+
+import java.util.*;
+
+/**
+ * A set of unit tests comparing a frozen tree against the tree it was frozen from.
+ */
+public class FrozenBSTTests {
+
+    @Test
+    public void testMatchesSourceTree() {
+        RedBlackBST<Integer, Integer> testBST = new RedBlackBST<>();
+        List<Integer> elements = ListUtils.genIntList(10000, 3000);
+        for (int i = 0; i < elements.size(); i++) testBST.put(i, elements.get(i));
+        FrozenBST<Integer, Integer> frozen = testBST.freeze();
+
+        Assert.assertEquals(testBST.size(), frozen.size());
+        Assert.assertEquals(testBST.min(), frozen.min());
+        Assert.assertEquals(testBST.max(), frozen.max());
+        for (int i = 1; i <= testBST.size(); i++) {
+            Assert.assertEquals(testBST.select(i), frozen.select(i));
+        }
+        for (int x = -1; x <= 3000; x++) {
+            boolean present = testBST.contains(x);
+            Assert.assertEquals(present ? testBST.get(x) : null, frozen.get(x));
+            Assert.assertEquals(testBST.rank(x), frozen.rank(x));
+            if (present) Assert.assertEquals(testBST.predecessor(x), frozen.predecessor(x));
+        }
+    }
+
+    @Test
+    public void testDuplicates() {
+        BST<String, Integer> testBST = new BST<>();
+        testBST.put("a", 5);
+        testBST.put("b", 5);
+        testBST.put("c", 9);
+        FrozenBST<String, Integer> frozen = testBST.freeze();
+        Assert.assertEquals(Arrays.asList("a", "b"), frozen.getAll(5));
+        Assert.assertEquals("b", frozen.get(5));
+        Assert.assertEquals("b", frozen.predecessor(7));
+        Assert.assertNull(frozen.predecessor(5));
+        Assert.assertEquals("c", frozen.select(3));
+        Assert.assertTrue(frozen.getAll(6).isEmpty());
+    }
+
+    @Test
+    public void testSortedInsertFreeze() {
+        BST<Integer, Integer> testBST = new BST<>();
+        for (int i = 0; i < 20000; i++) testBST.put(i, i); // degenerate, 20000 levels deep
+        FrozenBST<Integer, Integer> frozen = testBST.freeze();
+        for (int i = 0; i < 20000; i += 7) Assert.assertEquals((Integer) i, frozen.get(i));
+        Assert.assertTrue(new BST<Integer, Integer>().freeze().isEmpty());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * A set of unit tests covering the buffered ingestion front-end.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A set of unit tests covering read-after-write consistency, backpressure and draining.
+ */
+public class IngestingBSTTests {
+
+    @Test
+    public void testReadYourWrites() throws InterruptedException {
+        IngestingRedBlackBST<Integer, Integer> testBST = new IngestingRedBlackBST<>(256);
+        Map<Integer, Deque<Integer>> reference = new HashMap<>();
+        Random gen = new Random();
+        for (int i = 0; i < 100000; i++) {
+            int key = gen.nextInt(500);
+            if (gen.nextInt(3) == 0) {
+                testBST.remove(key);
+                Deque<Integer> vals = reference.get(key);
+                if (vals != null && vals.pop() != null && vals.isEmpty()) reference.remove(key);
+            } else {
+                testBST.put(i, key);
+                reference.computeIfAbsent(key, k -> new ArrayDeque<>()).push(i);
+            }
+            Deque<Integer> vals = reference.get(key);
+            Assert.assertEquals(vals == null ? null : vals.peek(), testBST.get(key));
+        }
+        testBST.close();
+        Assert.assertEquals(0, testBST.pending());
+        for (int key = 0; key < 500; key++) {
+            Deque<Integer> vals = reference.get(key);
+            Assert.assertEquals(vals == null ? null : vals.peek(), testBST.get(key));
+        }
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        RedBlackBST<Integer, Integer> tree = new RedBlackBST<>();
+        IngestingRedBlackBST<Integer, Integer> testBST = new IngestingRedBlackBST<>(tree, 64);
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int base = t * 50000;
+            producers.add(new Thread(() -> {
+                try {
+                    for (int i = base; i < base + 50000; i++) testBST.put(i, i);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        for (Thread t : producers) t.start();
+        for (Thread t : producers) t.join();
+        testBST.flush();
+        Assert.assertEquals(0, testBST.pending());
+        Assert.assertEquals(200000, tree.size());
+        for (int i = 0; i < 200000; i += 13) Assert.assertEquals((Integer) i, testBST.get(i));
+        testBST.close();
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        RedBlackBST<Integer, Integer> tree = new RedBlackBST<>();
+        IngestingRedBlackBST<Integer, Integer> testBST = new IngestingRedBlackBST<>(tree, 1);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(testBST.offer(i, i, 10, TimeUnit.SECONDS));
+            Assert.assertTrue(testBST.pending() <= 2); // one buffered, at most one being applied
+        }
+        testBST.close();
+        Assert.assertEquals(1000, tree.size());
+        try {
+            testBST.put(1, 1);
+            Assert.fail("put after close should fail");
+        } catch (IllegalStateException expected) {
+            // closed
+        }
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void testDrainerFailureIsReported() throws InterruptedException {
+        IngestingRedBlackBST<Integer, Comparable> testBST = new IngestingRedBlackBST<>(4);
+        try {
+            testBST.put(1, null);
+            Assert.fail("a null key should be rejected");
+        } catch (IllegalArgumentException expected) {
+            // rejected before reaching the drainer
+        }
+        testBST.put(1, 1);
+        testBST.flush(); // so the bad key is compared in the drainer, not against a buffered key
+        testBST.put(2, "two"); // cannot be compared with an Integer key
+        try {
+            testBST.flush();
+            Assert.fail("flush should report the drainer's failure instead of blocking");
+        } catch (IllegalStateException expected) {
+            Assert.assertTrue(expected.getCause() instanceof ClassCastException);
+        }
+        for (int i = 0; i < 10; i++) { // would block forever once the buffer fills
+            try {
+                testBST.put(i, i);
+                Assert.fail("put after a failure should fail");
+            } catch (IllegalStateException expected) {
+                // reported
+            }
+        }
+        try {
+            testBST.get(1);
+            Assert.fail("get after a failure should fail");
+        } catch (IllegalStateException expected) {
+            // reported
+        }
+        try {
+            testBST.close();
+            Assert.fail("close should report the failure");
+        } catch (IllegalStateException expected) {
+            // reported
+        }
+    }
+
+    @Test
+    public void testDrainerErrorIsReported() throws InterruptedException {
+        IngestingRedBlackBST<Integer, PoisonKey> testBST = new IngestingRedBlackBST<>(4);
+        testBST.put(1, new PoisonKey(1, false));
+        testBST.flush();
+        testBST.put(2, new PoisonKey(2, true)); // throws an Error in the drainer
+        try {
+            testBST.flush();
+            Assert.fail("flush should report the drainer's Error instead of blocking");
+        } catch (IllegalStateException expected) {
+            Assert.assertTrue(expected.getCause().getCause() instanceof StackOverflowError);
+        }
+        for (int i = 0; i < 10; i++) { // would block forever once the buffer fills
+            try {
+                testBST.put(i, new PoisonKey(i, false));
+                Assert.fail("put after a failure should fail");
+            } catch (IllegalStateException expected) {
+                // reported
+            }
+        }
+    }
+
+    /**
+     * A key whose comparison with any other key throws if either is poisoned.
+     */
+    private static class PoisonKey implements Comparable<PoisonKey> {
+
+        private final int id;
+        private final boolean poisoned;
+
+        PoisonKey(int id, boolean poisoned) {
+            this.id = id;
+            this.poisoned = poisoned;
+        }
+
+        @Override
+        public int compareTo(PoisonKey other) {
+            if (other != this && (poisoned || other.poisoned)) throw new StackOverflowError();
+            return Integer.compare(id, other.id);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * A buffered front-end that ingests an unbounded stream of updates into a red black tree.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Accepts puts and removes into a bounded write buffer and applies them to a RedBlackBST
+ * in key sorted batches on a background thread, so producers never wait on rebalancing,
+ * only on a full buffer (backpressure). Readers see every accepted update immediately: a
+ * read holds the tree's read lock, which excludes the drainer swapping and applying a
+ * batch, and replays the still buffered updates for it's key over the tree's objects.
+ * The buffer is indexed by key, so a read only replays it's own key's updates.
+ * @param <T> the type of the object to be inserted
+ * @param <K> the type of the keys associated with the objects
+ */
+class IngestingRedBlackBST<T, K extends Comparable> implements AutoCloseable {
+
+    private final RedBlackBST<T, K> tree;
+    /** Held for reading by readers and for writing while the drainer swaps and applies a batch. */
+    private final ReentrantReadWriteLock treeLock = new ReentrantReadWriteLock();
+    /** Guards buffer and the sequence numbers, always acquired after treeLock. */
+    private final ReentrantLock bufferLock = new ReentrantLock();
+    private final Condition notFull = bufferLock.newCondition();
+    private final Condition notEmpty = bufferLock.newCondition();
+    private final Condition drained = bufferLock.newCondition();
+    private final int capacity;
+    /** Buffered updates grouped by key, each key's in arrival order. */
+    private TreeMap<K, List<Update<T, K>>> buffer = new TreeMap<>();
+    /** The map swapped in as the next buffer, empty between batches. */
+    private TreeMap<K, List<Update<T, K>>> batch = new TreeMap<>();
+    private int buffered; // number of updates in buffer
+    private long accepted; // updates accepted into the buffer
+    private long applied; // updates applied to the tree
+    private boolean closed;
+    /** The exception that stopped the drainer, rethrown to every later caller. */
+    private RuntimeException failure;
+    private final Thread drainer;
+
+    /**
+     * @param capacity the number of buffered updates at which producers block
+     */
+    IngestingRedBlackBST(int capacity) {
+        this(new RedBlackBST<>(), capacity);
+    }
+
+    /**
+     * @param tree the tree to ingest into, which must not be modified by anyone else
+     * @param capacity the number of buffered updates at which producers block
+     */
+    IngestingRedBlackBST(RedBlackBST<T, K> tree, int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive.");
+        this.tree = tree;
+        this.capacity = capacity;
+        drainer = new Thread(this::drain, "bst-ingest");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Accepts an insertion, blocking while the buffer is full.
+     * @param object the object to insert
+     * @param key the key for that object
+     * @throws InterruptedException if interrupted while waiting for buffer space
+     */
+    public void put(T object, K key) throws InterruptedException {
+        if (object == null) throw new IllegalArgumentException("Cannot insert a null object.");
+        offer(new Update<>(object, key), -1);
+    }
+
+    /**
+     * Accepts an insertion, waiting at most timeout for buffer space.
+     * @param object the object to insert
+     * @param key the key for that object
+     * @param timeout the maximum time to wait
+     * @param unit the unit of timeout
+     * @return true if the update was accepted, false if the buffer stayed full
+     * @throws InterruptedException if interrupted while waiting for buffer space
+     */
+    public boolean offer(T object, K key, long timeout, TimeUnit unit) throws InterruptedException {
+        if (object == null) throw new IllegalArgumentException("Cannot insert a null object.");
+        return offer(new Update<>(object, key), unit.toNanos(timeout));
+    }
+
+    /**
+     * Accepts the removal of the most recently inserted object associated with key,
+     * blocking while the buffer is full. Removing a missing key has no effect.
+     * @param key the key associated with the object to be removed
+     * @throws InterruptedException if interrupted while waiting for buffer space
+     */
+    public void remove(K key) throws InterruptedException {
+        offer(new Update<>(null, key), -1);
+    }
+
+    /**
+     * Gets the object associated with key, including updates not yet applied to the tree.
+     * @param key the key associated with the desired object
+     * @return the most recently inserted object associated with key, or null if there is none
+     */
+    public T get(K key) {
+        treeLock.readLock().lock();
+        try {
+            Stack<T> applied = null;
+            if (!tree.isEmpty()) {
+                RedBlackBST<T, K>.Node n = tree.search(key);
+                if (n != tree.NODE_DNE) applied = n.getValues();
+            }
+            int remaining = applied == null ? 0 : applied.size();
+            Stack<T> pushed = new Stack<>();
+
+            bufferLock.lock();
+            try {
+                checkFailure();
+                List<Update<T, K>> updates = buffer.get(key);
+                if (updates != null) for (Update<T, K> u : updates) {
+                    if (u.value != null) pushed.push(u.value);
+                    else if (!pushed.isEmpty()) pushed.pop();
+                    else if (remaining > 0) remaining--;
+                }
+            } finally {
+                bufferLock.unlock();
+            }
+
+            if (!pushed.isEmpty()) return pushed.peek();
+            return remaining > 0 ? applied.get(remaining - 1) : null;
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(K key) { return get(key) != null; }
+
+    /**
+     * @return the number of accepted updates not yet applied to the tree
+     */
+    public int pending() {
+        bufferLock.lock();
+        try {
+            return (int) (accepted - applied);
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until every update accepted before this call has been applied to the tree.
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if applying an update failed
+     */
+    public void flush() throws InterruptedException {
+        bufferLock.lock();
+        try {
+            long target = accepted;
+            while (applied < target && failure == null) drained.await();
+            checkFailure();
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting updates, applies everything already buffered and stops the drainer.
+     * @throws InterruptedException if interrupted while waiting for the drainer
+     * @throws IllegalStateException if applying an update failed
+     */
+    @Override
+    public void close() throws InterruptedException {
+        bufferLock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            bufferLock.unlock();
+        }
+        drainer.join();
+        bufferLock.lock();
+        try {
+            checkFailure();
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * Appends u to the buffer, waiting for space for at most nanos (forever if negative).
+     */
+    private boolean offer(Update<T, K> u, long nanos) throws InterruptedException {
+        if (u.key == null) throw new IllegalArgumentException("Key cannot be null.");
+        bufferLock.lockInterruptibly();
+        try {
+            long wait = nanos;
+            while (buffered >= capacity && !closed && failure == null) {
+                if (nanos < 0) notFull.await();
+                else if (wait <= 0) return false;
+                else wait = notFull.awaitNanos(wait);
+            }
+            checkFailure();
+            if (closed) throw new IllegalStateException("Ingestion has been closed.");
+            buffer.computeIfAbsent(u.key, k -> new ArrayList<>(1)).add(u);
+            buffered++;
+            accepted++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * The drainer loop: waits for updates, then swaps the buffer out and applies it in
+     * key order while holding the tree's write lock. If applying throws, even an Error, the
+     * exception is recorded for every waiting and later caller and the drainer stops; the
+     * failed batch may be partially applied.
+     */
+    private void drain() {
+        while (true) {
+            bufferLock.lock();
+            try {
+                while (buffered == 0 && !closed) notEmpty.awaitUninterruptibly();
+                if (buffered == 0) return; // closed and fully drained
+            } finally {
+                bufferLock.unlock();
+            }
+
+            treeLock.writeLock().lock();
+            try {
+                TreeMap<K, List<Update<T, K>>> next;
+                int count;
+                bufferLock.lock();
+                try {
+                    next = buffer;
+                    count = buffered;
+                    buffer = batch;
+                    buffered = 0;
+                    notFull.signalAll();
+                } finally {
+                    bufferLock.unlock();
+                }
+
+                for (Map.Entry<K, List<Update<T, K>>> e : next.entrySet()) { // key order, each key's in arrival order
+                    for (Update<T, K> u : e.getValue()) {
+                        if (u.value != null) tree.put(u.value, u.key);
+                        else tree.remove(u.key);
+                    }
+                }
+
+                bufferLock.lock();
+                try {
+                    applied += count;
+                    drained.signalAll();
+                } finally {
+                    bufferLock.unlock();
+                }
+                next.clear();
+                batch = next;
+            } catch (Throwable t) {
+                fail(t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t));
+                if (t instanceof Error) throw (Error) t;
+                return;
+            } finally {
+                treeLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Records the exception that stopped the drainer and wakes every waiting caller.
+     */
+    private void fail(RuntimeException e) {
+        bufferLock.lock();
+        try {
+            failure = e;
+            notFull.signalAll();
+            drained.signalAll();
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * Rethrows the drainer's failure, if any. Must hold bufferLock.
+     */
+    private void checkFailure() {
+        if (failure != null) throw new IllegalStateException("Applying buffered updates failed.", failure);
+    }
+
+    /**
+     * A buffered insertion of value, or a removal if value is null.
+     */
+    private static class Update<T, K> {
+
+        private final T value;
+        private final K key;
+
+        Update(T value, K key) {
+            this.value = value;
+            this.key = key;
+        }
+    }
+}
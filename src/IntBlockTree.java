@@ -0,0 +1,274 @@
+/*
+ * An ordered container of primitive int keys stored in sorted leaf blocks.
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Stack;
+
+/**
+ * An ordered container with the BST API for primitive int keys. Keys are kept in sorted
+ * blocks of BLOCK_SIZE unboxed ints, indexed by a red black tree keyed by each block's lower
+ * fence, so a lookup performs O(log(n / BLOCK_SIZE)) boxed comparisons and then searches a
+ * single block. Blocks are searched with Vector API comparisons (a whole vector of keys per
+ * instruction) when VectorIntSearch, compiled separately from the vector/ source root, and
+ * the jdk.incubator.vector module are available, and with a scalar binary search otherwise.
+ * The index aggregates the number of objects in every block, so select skips whole
+ * subtrees of blocks.
+ * @param <T> the type of the object to be inserted
+ */
+class IntBlockTree<T> {
+
+    /** Number of keys per block, a multiple of every Vector API int species length. */
+    static final int BLOCK_SIZE = 64;
+    /** VectorIntSearch.lowerBound, or null if blocks are searched with a scalar binary search. */
+    private static final MethodHandle VECTOR_SEARCH = findVectorSearch();
+    /** Whether blocks are searched with the Vector API. */
+    static final boolean VECTORIZED = VECTOR_SEARCH != null;
+
+    /** Blocks keyed by their lower fence; the first block's fence is Integer.MIN_VALUE. */
+    private final AugmentedRedBlackBST<Block<T>, Integer, Integer> index = new AugmentedRedBlackBST<>(new BlockCount<>());
+
+    IntBlockTree() {
+        index.put(new Block<>(), Integer.MIN_VALUE);
+    }
+
+    /**
+     * Inserts a object/key pair, splitting the owning block in half if it is full. O(log n)
+     * @param object the object to insert
+     * @param key the key for that object
+     */
+    public void put(T object, int key) {
+        AugmentedRedBlackBST<Block<T>, Integer, Integer>.Node owner = floor(key);
+        Block<T> block = owner.getValue();
+        int i = block.lowerBound(key);
+        if (i < block.len && block.keys[i] == key) {
+            block.values[i].push(object);
+            block.count++;
+            index.reliftPath(owner);
+            return;
+        }
+        if (block.len == BLOCK_SIZE) {
+            Block<T> upper = block.split();
+            index.reliftPath(owner);
+            index.put(upper, upper.keys[0]);
+            if (key >= upper.keys[0]) {
+                owner = floor(key);
+                block = upper;
+            }
+            i = block.lowerBound(key);
+        }
+        block.insert(i, key, object);
+        index.reliftPath(owner);
+    }
+
+    /**
+     * Gets the most recently inserted object associated with key. O(log n)
+     * @param key the key associated with the desired object
+     * @return the object associated with key, or null if there is none
+     */
+    public T get(int key) {
+        Block<T> block = floor(key).getValue();
+        int i = block.lowerBound(key);
+        return i < block.len && block.keys[i] == key ? block.values[i].peek() : null;
+    }
+
+    /**
+     * Removes the most recently inserted object associated with key, dropping the block
+     * from the index once it is empty. O(log n)
+     * @param key the key associated with the object to be removed
+     * @return the removed object, or null if there is none
+     */
+    public T remove(int key) {
+        AugmentedRedBlackBST<Block<T>, Integer, Integer>.Node owner = floor(key);
+        Block<T> block = owner.getValue();
+        int i = block.lowerBound(key);
+        if (i == block.len || block.keys[i] != key) return null;
+        T val = block.values[i].pop();
+        block.count--;
+        if (block.values[i].isEmpty()) block.delete(i);
+
+        if (block.len == 0 && owner.getKey() != Integer.MIN_VALUE) index.remove(owner.getKey()); // range joins the previous block
+        else index.reliftPath(owner);
+        return val;
+    }
+
+    /**
+     * Returns the object associated with the nth smallest key, skipping whole subtrees
+     * of blocks by their aggregated counts. O(log n)
+     * @param n the rank of the desired element (least - greatest)
+     * @return the element with the nth smallest key
+     */
+    public T select(int n) {
+        if (n <= 0 || n > size()) throw new IllegalArgumentException("Rank cannot be less than 0 or greater than the size of the BST.");
+        AugmentedRedBlackBST<Block<T>, Integer, Integer>.Node next = index.root;
+        int rem = n;
+        while (true) {
+            int left = index.summary(next.getLeftChild());
+            int own = next.getValue().count;
+            if (rem <= left) {
+                next = next.getLeftChild();
+            } else if (rem > left + own) {
+                rem -= left + own;
+                next = next.getRightChild();
+            } else {
+                return next.getValue().select(rem - left);
+            }
+        }
+    }
+
+    public int size() { return index.aggregate(); }
+    public boolean isEmpty() { return size() == 0; }
+    public boolean contains(int key) { return get(key) != null; }
+
+    public T min() {
+        if (isEmpty()) throw new IllegalStateException("Empty tree.");
+        return select(1);
+    }
+
+    public T max() {
+        if (isEmpty()) throw new IllegalStateException("Empty tree.");
+        return select(size());
+    }
+
+    /**
+     * Finds the block whose range contains key, the one with the greatest fence <= key.
+     * @param key the key to locate
+     * @return the index node holding the owning block
+     */
+    private AugmentedRedBlackBST<Block<T>, Integer, Integer>.Node floor(int key) {
+        AugmentedRedBlackBST<Block<T>, Integer, Integer>.Node floor = index.NODE_DNE, next = index.root;
+        while (next != index.NODE_DNE) {
+            if (next.getKey() <= key) {
+                floor = next;
+                next = next.getRightChild();
+            } else {
+                next = next.getLeftChild();
+            }
+        }
+        return floor;
+    }
+
+    /**
+     * Searches for key in a sorted block with Integer.MAX_VALUE padding.
+     * @param keys the block's keys
+     * @param len the number of keys in use
+     * @param key the key to search for
+     * @return the number of keys less than key
+     */
+    static int lowerBound(int[] keys, int len, int key) {
+        if (VECTOR_SEARCH != null) {
+            try {
+                return (int) VECTOR_SEARCH.invokeExact(keys, key); // a constant handle, inlined by the JIT
+            } catch (Throwable e) {
+                throw new IllegalStateException("Vectorized search failed.", e);
+            }
+        }
+        int lo = 0, hi = len;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Looks up VectorIntSearch reflectively, so that this class compiles and runs without
+     * the incubating module.
+     * @return a handle to VectorIntSearch.lowerBound, or null if it is unavailable or
+     * disabled with -Dbst.scalarSearch
+     */
+    private static MethodHandle findVectorSearch() {
+        if (Boolean.getBoolean("bst.scalarSearch") || !ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) return null;
+        try {
+            Class<?> search = Class.forName("VectorIntSearch");
+            return MethodHandles.lookup().findStatic(search, "lowerBound", MethodType.methodType(int.class, int[].class, int.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null; // not compiled into this build
+        }
+    }
+
+    /**
+     * A sorted run of up to BLOCK_SIZE distinct keys and the objects of each key.
+     */
+    private static class Block<T> {
+
+        private final int[] keys = new int[BLOCK_SIZE];
+        private final Stack<T>[] values = newStacks();
+        private int len; // number of distinct keys
+        private int count; // number of objects, duplicates included
+
+        Block() {
+            Arrays.fill(keys, Integer.MAX_VALUE); // padding never compares less than a key
+        }
+
+        int lowerBound(int key) { return IntBlockTree.lowerBound(keys, len, key); }
+
+        void insert(int i, int key, T object) {
+            System.arraycopy(keys, i, keys, i + 1, len - i);
+            System.arraycopy(values, i, values, i + 1, len - i);
+            keys[i] = key;
+            values[i] = new Stack<>();
+            values[i].push(object);
+            len++;
+            count++;
+        }
+
+        void delete(int i) {
+            System.arraycopy(keys, i + 1, keys, i, len - i - 1);
+            System.arraycopy(values, i + 1, values, i, len - i - 1);
+            len--;
+            keys[len] = Integer.MAX_VALUE;
+            values[len] = null;
+        }
+
+        /**
+         * Moves the upper half of this block's keys into a new block.
+         * @return the new block holding the greater keys
+         */
+        Block<T> split() {
+            Block<T> upper = new Block<>();
+            int half = len / 2;
+            upper.len = len - half;
+            System.arraycopy(keys, half, upper.keys, 0, upper.len);
+            System.arraycopy(values, half, upper.values, 0, upper.len);
+            for (int i = half; i < len; i++) {
+                upper.count += values[i].size();
+                keys[i] = Integer.MAX_VALUE;
+                values[i] = null;
+            }
+            count -= upper.count;
+            len = half;
+            return upper;
+        }
+
+        /**
+         * @param n the rank within this block (1 based)
+         * @return the object associated with the nth smallest key of this block
+         */
+        T select(int n) {
+            int rem = n;
+            for (int i = 0; ; i++) {
+                if (rem <= values[i].size()) return values[i].peek();
+                rem -= values[i].size();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Stack<T>[] newStacks() {
+            return (Stack<T>[]) new Stack[BLOCK_SIZE];
+        }
+    }
+
+    /**
+     * Sums the number of objects held by the blocks of a subtree.
+     */
+    private static class BlockCount<T> implements Augmentation<Block<T>, Integer, Integer> {
+        public Integer identity() { return 0; }
+        public Integer lift(Integer fence, Block<T> block) { return block.count; }
+        public Integer combine(Integer left, Integer right) { return left + right; }
+    }
+}
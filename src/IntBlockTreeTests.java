@@ -0,0 +1,78 @@
+/*
+ * A set of unit tests covering the int keyed block tree.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * A set of unit tests comparing the block tree against a reference TreeMap and the
+ * vectorized block search against the scalar one.
+ */
+public class IntBlockTreeTests {
+
+    @Test
+    public void testAgainstTreeMap() {
+        IntBlockTree<Integer> testTree = new IntBlockTree<>();
+        TreeMap<Integer, Deque<Integer>> reference = new TreeMap<>();
+        Random gen = new Random();
+        int size = 0;
+        for (int i = 0; i < 200000; i++) {
+            int key = gen.nextInt(5000) - 2500;
+            if (gen.nextInt(5) < 2) {
+                Deque<Integer> vals = reference.get(key);
+                Integer expected = vals == null ? null : vals.pop();
+                if (vals != null && vals.isEmpty()) reference.remove(key);
+                if (expected != null) size--;
+                Assert.assertEquals(expected, testTree.remove(key));
+            } else {
+                testTree.put(i, key);
+                reference.computeIfAbsent(key, k -> new ArrayDeque<>()).push(i);
+                size++;
+            }
+            Assert.assertEquals(size, testTree.size());
+            Deque<Integer> vals = reference.get(key);
+            Assert.assertEquals(vals == null ? null : vals.peek(), testTree.get(key));
+        }
+
+        int rank = 0;
+        for (Deque<Integer> vals : reference.values()) {
+            Assert.assertEquals(vals.peek(), testTree.select(rank + 1));
+            Assert.assertEquals(vals.peek(), testTree.select(rank + vals.size()));
+            rank += vals.size();
+        }
+        Assert.assertEquals(reference.firstEntry().getValue().peek(), testTree.min());
+        Assert.assertEquals(reference.lastEntry().getValue().peek(), testTree.max());
+    }
+
+    @Test
+    public void testSortedInsertAndDrain() {
+        IntBlockTree<Integer> testTree = new IntBlockTree<>();
+        for (int i = 0; i < 10000; i++) testTree.put(i, i);
+        for (int i = 1; i <= 10000; i++) Assert.assertEquals((Integer) (i - 1), testTree.select(i));
+        for (int i = 9999; i >= 0; i--) Assert.assertEquals((Integer) i, testTree.remove(i));
+        Assert.assertTrue(testTree.isEmpty());
+        testTree.put(-1, Integer.MAX_VALUE);
+        testTree.put(-2, Integer.MIN_VALUE);
+        Assert.assertEquals((Integer) (-1), testTree.get(Integer.MAX_VALUE));
+        Assert.assertEquals((Integer) (-2), testTree.min());
+    }
+
+    @Test
+    public void testBlockSearchMatchesLinearScan() { // vectorized or scalar, whichever is in use
+        Random gen = new Random();
+        for (int t = 0; t < 10000; t++) {
+            int len = gen.nextInt(IntBlockTree.BLOCK_SIZE + 1);
+            int[] keys = new int[IntBlockTree.BLOCK_SIZE];
+            Arrays.fill(keys, Integer.MAX_VALUE);
+            for (int i = 0; i < len; i++) keys[i] = gen.nextInt(1000);
+            Arrays.sort(keys, 0, len);
+            int key = gen.nextInt(1100);
+            int expected = 0;
+            while (expected < len && keys[expected] < key) expected++;
+            Assert.assertEquals(expected, IntBlockTree.lowerBound(keys, len, key));
+        }
+    }
+}
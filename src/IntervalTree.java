@@ -0,0 +1,128 @@
+/*
+ * An interval tree built on the augmented red black tree.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A red black tree of closed intervals keyed by their low endpoint in which every
+ * node caches the greatest high endpoint of its subtree (CLRS section 14.3), so that
+ * subtrees which cannot contain an overlapping interval are skipped.
+ * @param <T> the type of the object associated with each interval
+ * @param <K> the type of the interval endpoints
+ */
+class IntervalTree<T, K extends Comparable> extends AugmentedRedBlackBST<IntervalTree.Interval<T, K>, K, K> {
+
+    IntervalTree() {
+        super(new MaxEndpoint<>());
+    }
+
+    /**
+     * Inserts an object associated with the closed interval [low, high]. O(log n)
+     * @param object the object to insert
+     * @param low the low endpoint of the interval
+     * @param high the high endpoint of the interval
+     */
+    public void put(T object, K low, K high) {
+        put(new Interval<>(object, low, high), low);
+    }
+
+    /**
+     * Inserts an interval, which must be keyed by it's low endpoint. O(log n)
+     * @param interval the interval to insert
+     * @param key the low endpoint of interval
+     */
+    @Override
+    public void put(Interval<T, K> interval, K key) {
+        if (cmp(interval.getLow(), interval.getHigh()) > 0) throw new IllegalArgumentException("Low endpoint cannot be greater than the high endpoint.");
+        if (cmp(key, interval.getLow()) != 0) throw new IllegalArgumentException("An interval must be keyed by it's low endpoint.");
+        super.put(interval, key);
+    }
+
+    /**
+     * Returns the object of some interval overlapping [low, high]. O(log n)
+     * @param low the low endpoint of the query interval
+     * @param high the high endpoint of the query interval
+     * @return the object of an overlapping interval, or null if there is none
+     */
+    public T anyOverlapping(K low, K high) {
+        Node next = root;
+        while (next != NODE_DNE) {
+            if (cmp(next.getKey(), high) <= 0) {
+                for (Interval<T, K> in : next.getValues()) {
+                    if (cmp(in.high, low) >= 0) return in.value;
+                }
+            }
+            K leftMax = summary(next.getLeftChild());
+            next = leftMax != null && cmp(leftMax, low) >= 0 ? next.getLeftChild() : next.getRightChild();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the objects of all intervals overlapping [low, high] ordered by their
+     * low endpoint. O(min(n, m log n)) where m is the number of overlapping intervals
+     * @param low the low endpoint of the query interval
+     * @param high the high endpoint of the query interval
+     * @return a list of the objects of every overlapping interval
+     */
+    public List<T> overlapping(K low, K high) {
+        List<T> found = new ArrayList<>();
+        overlapping(root, low, high, found);
+        return found;
+    }
+
+    /**
+     * Recursively collects the overlapping intervals of the subtree rooted at n,
+     * skipping any subtree whose greatest high endpoint is less than low.
+     * @param n the root of the subtree to examine
+     * @param low the low endpoint of the query interval
+     * @param high the high endpoint of the query interval
+     * @param found the list to fill with the overlapping objects
+     */
+    private void overlapping(Node n, K low, K high, List<T> found) {
+        if (n == NODE_DNE || cmp(summary(n), low) < 0) return;
+        overlapping(n.getLeftChild(), low, high, found);
+        if (cmp(n.getKey(), high) > 0) return; // every key in the right subtree is greater too
+        for (Interval<T, K> in : n.getValues()) {
+            if (cmp(in.high, low) >= 0) found.add(in.value);
+        }
+        overlapping(n.getRightChild(), low, high, found);
+    }
+
+    /**
+     * A closed interval [low, high] and the object associated with it.
+     */
+    static class Interval<T, K> {
+
+        private final T value;
+        private final K low;
+        private final K high;
+
+        Interval(T value, K low, K high) {
+            this.value = value;
+            this.low = low;
+            this.high = high;
+        }
+
+        T getValue() { return value; }
+        K getLow() { return low; }
+        K getHigh() { return high; }
+    }
+
+    /**
+     * Tracks the greatest high endpoint of a subtree, null for an empty subtree.
+     */
+    private static class MaxEndpoint<T, K extends Comparable> implements Augmentation<Interval<T, K>, K, K> {
+        public K identity() { return null; }
+        public K lift(K key, Interval<T, K> value) { return value.high; }
+
+        @SuppressWarnings("unchecked")
+        public K combine(K left, K right) {
+            if (left == null) return right;
+            if (right == null) return left;
+            return left.compareTo(right) >= 0 ? left : right;
+        }
+    }
+}
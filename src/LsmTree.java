@@ -0,0 +1,675 @@
+/*
+ * A log-structured merge tree built from a red black memtable and immutable sorted runs on disk.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A write optimised ordered map that can hold more data than fits on the heap. Writes go to
+ * an in-memory RedBlackBST (the memtable); once it holds memtableCapacity keys it is frozen
+ * and a background thread writes it out as an immutable sorted run file. Runs are merged by
+ * tiered compaction: whenever fanout runs of the same tier are the newest runs, they are
+ * merged into one run of the next tier. Unlike BST, a key maps to a single object, the most
+ * recently put one, and removal writes a tombstone that hides older runs' objects until the
+ * merge that includes the oldest run drops it.
+ * A get consults the memtable, the frozen memtables and then the runs, newest first, skipping
+ * runs whose key range or Bloom filter rules the key out. A scan k-way merges all of them.
+ * Run files are spill space owned by this tree: they are deleted on close and not recovered.
+ * Keys' hashCode must be consistent with compareTo, as the Bloom filters hash keys.
+ * @param <T> the type of the object to be inserted
+ * @param <K> the type of the keys associated with the objects
+ */
+class LsmTree<T extends Serializable, K extends Comparable & Serializable> implements AutoCloseable {
+
+    /** Number of run entries per sparse index entry. */
+    static final int INDEX_INTERVAL = 16;
+    /** Target false positive rate of every run's Bloom filter. */
+    static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+    /** Number of frozen memtables waiting to be flushed at which writers block. */
+    private static final int MAX_FROZEN = 2;
+    /** Marks a removed key in memtables and merges; stored as a null object in run files. */
+    private static final Object TOMBSTONE = new Object();
+
+    private final Path dir;
+    private final int memtableCapacity;
+    private final int fanout;
+    /** Guards memtable, frozen, runs and closed. */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Condition flushed = lock.writeLock().newCondition();
+    private RedBlackBST<Object, K> memtable = new RedBlackBST<>();
+    /** Memtables waiting to be flushed, newest first. */
+    private List<RedBlackBST<Object, K>> frozen = new ArrayList<>();
+    /** Runs newest first, replaced (never modified) by the background thread. */
+    private List<Run> runs = Collections.emptyList();
+    private boolean closed;
+    private volatile Throwable failure;
+    /** Flushes and compacts, one task at a time. */
+    private final ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "lsm-compaction");
+        t.setDaemon(true);
+        return t;
+    });
+    private long nextRunId; // only used by the background thread
+
+    /**
+     * @param dir the directory to write run files to, created if missing
+     * @param memtableCapacity the number of keys at which the memtable is flushed
+     * @param fanout the number of runs of one tier that are merged into the next tier
+     * @throws IOException if dir cannot be created
+     */
+    LsmTree(Path dir, int memtableCapacity, int fanout) throws IOException {
+        if (memtableCapacity <= 0) throw new IllegalArgumentException("Memtable capacity must be positive.");
+        if (fanout < 2) throw new IllegalArgumentException("Fanout must be at least 2.");
+        this.dir = Files.createDirectories(dir);
+        this.memtableCapacity = memtableCapacity;
+        this.fanout = fanout;
+    }
+
+    /**
+     * Associates object with key, replacing any previous object. Blocks only while
+     * MAX_FROZEN memtables are waiting to be flushed. O(log n) in the memtable size
+     * @param object the object to insert
+     * @param key the key for that object
+     */
+    public void put(T object, K key) {
+        if (object == null) throw new IllegalArgumentException("Cannot insert a null object.");
+        write(object, key);
+    }
+
+    /**
+     * Removes the object associated with key, if any, by writing a tombstone. The
+     * removed object is not returned, as that would cost a read of every run.
+     * @param key the key associated with the object to be removed
+     */
+    public void remove(K key) {
+        write(TOMBSTONE, key);
+    }
+
+    /**
+     * Gets the object associated with key, reading at most one sparse index interval of
+     * each run that may hold it.
+     * @param key the key associated with the desired object
+     * @return the object associated with key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public T get(K key) {
+        List<Run> snapshot;
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            Object value = lookup(memtable, key);
+            for (int i = 0; value == null && i < frozen.size(); i++) value = lookup(frozen.get(i), key);
+            if (value != null) return value == TOMBSTONE ? null : (T) value;
+            snapshot = acquire();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try {
+            for (Run run : snapshot) {
+                Object value = run.find(key);
+                if (value != null) return value == TOMBSTONE ? null : (T) value;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(snapshot);
+        }
+    }
+
+    public boolean contains(K key) { return get(key) != null; }
+
+    /**
+     * Visits every key in [lo, hi] and it's object in ascending key order, merging the
+     * memtables and runs so that only the newest object of each key is visited. Objects
+     * are streamed from the run files, so the range may be larger than the heap.
+     * @param lo the least key to visit, or null for no lower bound
+     * @param hi the greatest key to visit, or null for no upper bound
+     * @param visitor called with each key and it's object
+     */
+    @SuppressWarnings("unchecked")
+    public void scan(K lo, K hi, BiConsumer<? super K, ? super T> visitor) {
+        List<Source> sources = new ArrayList<>();
+        List<Run> snapshot;
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            sources.add(new MemtableSource(memtable, lo, hi, 0));
+            for (RedBlackBST<Object, K> table : frozen) sources.add(new MemtableSource(table, lo, hi, sources.size()));
+            snapshot = acquire();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try {
+            for (Run run : snapshot) sources.add(new RunSource(run, lo, sources.size()));
+            Merger merged = new Merger(sources);
+            while (merged.next()) {
+                if (hi != null && cmp(merged.key, hi) > 0) break;
+                if (merged.value != TOMBSTONE) visitor.accept(merged.key, (T) merged.value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(snapshot);
+        }
+    }
+
+    /**
+     * @param lo the least key to include, or null for no lower bound
+     * @param hi the greatest key to include, or null for no upper bound
+     * @return the objects associated with keys in [lo, hi], in ascending key order
+     */
+    public List<T> range(K lo, K hi) {
+        List<T> objects = new ArrayList<>();
+        scan(lo, hi, (key, object) -> objects.add(object));
+        return objects;
+    }
+
+    /**
+     * Flushes the memtable and waits for the background thread to finish every pending
+     * flush and compaction.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (!memtable.isEmpty()) freeze();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            background.submit(() -> { }).get(); // runs after every task queued before it
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        lock.readLock().lock();
+        try {
+            checkOpen();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of runs on disk
+     */
+    int runCount() {
+        lock.readLock().lock();
+        try {
+            return runs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stops the background thread and deletes every run file once no scan or get is
+     * reading it. Objects still in the memtable are discarded.
+     * @throws InterruptedException if interrupted while waiting for the background thread
+     */
+    @Override
+    public void close() throws InterruptedException {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            flushed.signalAll();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        background.shutdown();
+        background.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        lock.writeLock().lock();
+        try {
+            release(runs);
+            runs = Collections.emptyList();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void write(Object value, K key) {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (memtable.contains(key)) memtable.remove(key); // one object per key
+            memtable.put(value, key);
+            if (memtable.size() >= memtableCapacity) freeze();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the memtable with an empty one and queues the old one to be flushed,
+     * first waiting while MAX_FROZEN memtables are already queued. Called with the
+     * write lock held.
+     */
+    private void freeze() {
+        while (frozen.size() >= MAX_FROZEN) {
+            flushed.awaitUninterruptibly();
+            checkOpen();
+        }
+        if (memtable.isEmpty()) return; // another writer froze it while we waited
+        RedBlackBST<Object, K> table = memtable;
+        memtable = new RedBlackBST<>();
+        frozen.add(0, table);
+        background.execute(() -> flushTable(table));
+    }
+
+    /**
+     * Writes a frozen memtable to a tier 0 run, then compacts. Runs on the background thread.
+     */
+    private void flushTable(RedBlackBST<Object, K> table) {
+        try {
+            List<Source> source = new ArrayList<>();
+            source.add(new MemtableSource(table, null, null, 0)); // frozen, so safe to read unlocked
+            Run run = writeRun(new Merger(source), table.size(), 0, false);
+            lock.writeLock().lock();
+            try {
+                List<Run> next = new ArrayList<>(runs.size() + 1);
+                next.add(run);
+                next.addAll(runs);
+                runs = Collections.unmodifiableList(next);
+                frozen.remove(table);
+                flushed.signalAll();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            compact();
+        } catch (Throwable t) { // anything else would leave the table frozen and writers waiting
+            fail(t);
+            if (t instanceof Error) throw (Error) t;
+        }
+    }
+
+    /**
+     * Merges the newest runs while fanout or more of them share a tier. Only the background
+     * thread replaces runs, so the merged group cannot change while it is being read.
+     */
+    private void compact() throws IOException {
+        while (true) {
+            List<Run> current;
+            lock.readLock().lock();
+            try {
+                current = runs;
+            } finally {
+                lock.readLock().unlock();
+            }
+            int count = 0;
+            while (count < current.size() && current.get(count).tier == current.get(0).tier) count++;
+            if (count < fanout) return;
+
+            List<Source> sources = new ArrayList<>();
+            int expected = 0;
+            for (int i = 0; i < count; i++) {
+                sources.add(new RunSource(current.get(i), null, i));
+                expected += current.get(i).count;
+            }
+            boolean oldest = count == current.size(); // nothing older left for tombstones to hide
+            Run merged = writeRun(new Merger(sources), expected, current.get(0).tier + 1, oldest);
+
+            lock.writeLock().lock();
+            try {
+                List<Run> next = new ArrayList<>(current.size() - count + 1);
+                if (merged != null) next.add(merged);
+                next.addAll(current.subList(count, current.size()));
+                runs = Collections.unmodifiableList(next);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            release(current.subList(0, count));
+        }
+    }
+
+    /**
+     * Writes the merged entries to a new run file, each entry as a length prefixed record
+     * of it's serialized key and object (null for a tombstone).
+     * @param merged the entries to write, in ascending key order
+     * @param expected an upper bound on the number of entries, to size the Bloom filter
+     * @param tier the tier of the new run
+     * @param dropTombstones whether to omit tombstones
+     * @return the new run, or null if no entries were written
+     */
+    private Run writeRun(Merger merged, int expected, int tier, boolean dropTombstones) throws IOException {
+        Path file = dir.resolve("run-" + nextRunId++ + ".dat");
+        BloomFilter bloom = new BloomFilter(expected, BLOOM_FALSE_POSITIVE_RATE);
+        List<K> indexKeys = new ArrayList<>();
+        List<Long> indexOffsets = new ArrayList<>();
+        K last = null;
+        long offset = 0;
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            while (merged.next()) {
+                if (dropTombstones && merged.value == TOMBSTONE) continue;
+                byte[] record = serialize(merged.key, merged.value == TOMBSTONE ? null : merged.value);
+                if (count % INDEX_INTERVAL == 0) {
+                    indexKeys.add(merged.key);
+                    indexOffsets.add(offset);
+                }
+                out.writeInt(record.length);
+                out.write(record);
+                offset += Integer.BYTES + record.length;
+                bloom.add(merged.key);
+                last = merged.key;
+                count++;
+            }
+        }
+        if (count == 0) {
+            Files.delete(file);
+            return null;
+        }
+        return new Run(file, tier, count, offset, indexKeys, indexOffsets, bloom, last);
+    }
+
+    private static byte[] serialize(Object key, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(key);
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Object lookup(RedBlackBST<Object, K> table, K key) {
+        return table.isEmpty() ? null : table.get(key);
+    }
+
+    /**
+     * Takes a reference to every current run, so none is deleted while being read.
+     * Called with a lock held.
+     */
+    private List<Run> acquire() {
+        for (Run run : runs) run.refs.incrementAndGet();
+        return runs;
+    }
+
+    private void release(List<Run> released) {
+        for (Run run : released) run.release();
+    }
+
+    private void fail(Throwable t) {
+        failure = t;
+        lock.writeLock().lock();
+        try {
+            flushed.signalAll();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) throw new IllegalStateException("LSM tree has been closed.");
+        if (failure != null) throw new IllegalStateException("Background flush failed.", failure);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int cmp(K key1, K key2) {
+        return key1.compareTo(key2);
+    }
+
+    /**
+     * An immutable sorted run file, with it's sparse index and Bloom filter held in memory.
+     */
+    private class Run {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final int tier;
+        private final int count; // number of entries, tombstones included
+        private final long end; // file length
+        /** Every INDEX_INTERVAL-th key and the offset of it's record. */
+        private final List<K> indexKeys;
+        private final List<Long> indexOffsets;
+        private final BloomFilter bloom;
+        private final K last;
+        /** One reference held by runs while listed, plus one per reader. */
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        Run(Path file, int tier, int count, long end, List<K> indexKeys, List<Long> indexOffsets, BloomFilter bloom, K last) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file);
+            this.tier = tier;
+            this.count = count;
+            this.end = end;
+            this.indexKeys = indexKeys;
+            this.indexOffsets = indexOffsets;
+            this.bloom = bloom;
+            this.last = last;
+        }
+
+        /**
+         * @param key the key to look up
+         * @return the object associated with key, TOMBSTONE if it was removed, or null if
+         * this run has no entry for key
+         */
+        Object find(K key) throws IOException {
+            if (cmp(key, indexKeys.get(0)) < 0 || cmp(key, last) > 0 || !bloom.mightContain(key)) return null;
+            int i = floorIndex(key);
+            long offset = indexOffsets.get(i);
+            long stop = i + 1 < indexOffsets.size() ? indexOffsets.get(i + 1) : end;
+            while (offset < stop) {
+                Record record = read(offset);
+                int kCmp = cmp(record.key, key);
+                if (kCmp == 0) return record.value;
+                if (kCmp > 0) return null;
+                offset = record.next;
+            }
+            return null;
+        }
+
+        /**
+         * @param key the key to locate, which need not be in the run
+         * @return the offset to start reading at to find the least key >= key
+         */
+        long seek(K key) {
+            return cmp(key, indexKeys.get(0)) < 0 ? 0 : indexOffsets.get(floorIndex(key));
+        }
+
+        /**
+         * @return the index of the greatest index key <= key, which must be >= the first key
+         */
+        private int floorIndex(K key) {
+            int lo = 0, hi = indexKeys.size() - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (cmp(indexKeys.get(mid), key) <= 0) lo = mid;
+                else hi = mid - 1;
+            }
+            return lo;
+        }
+
+        /**
+         * Reads the record at offset with positional reads, so concurrent readers do not
+         * share a file position.
+         */
+        @SuppressWarnings("unchecked")
+        Record read(long offset) throws IOException {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            readFully(length, offset);
+            ByteBuffer bytes = ByteBuffer.allocate(length.getInt(0));
+            readFully(bytes, offset + Integer.BYTES);
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.array()))) {
+                K key = (K) in.readObject();
+                Object value = in.readObject();
+                return new Record(key, value == null ? TOMBSTONE : value, offset + Integer.BYTES + bytes.capacity());
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Cannot deserialize record in " + file, e);
+            }
+        }
+
+        private void readFully(ByteBuffer buffer, long offset) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) throw new EOFException("Truncated run " + file);
+            }
+        }
+
+        /**
+         * Drops a reference, closing and deleting the file when none remain.
+         */
+        void release() {
+            if (refs.decrementAndGet() > 0) return;
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * A decoded run entry and the offset of the entry after it.
+     */
+    private class Record {
+
+        private final K key;
+        private final Object value;
+        private final long next;
+
+        Record(K key, Object value, long next) {
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /**
+     * A cursor over sorted entries. Sources with a lower age hold newer entries.
+     */
+    private abstract class Source {
+
+        final int age;
+        K key;
+        Object value;
+
+        Source(int age) {
+            this.age = age;
+        }
+
+        /**
+         * Moves to the next entry.
+         * @return false if there are no more entries
+         */
+        abstract boolean advance() throws IOException;
+    }
+
+    /**
+     * The entries of a memtable in range, copied so the memtable may change afterwards.
+     */
+    private class MemtableSource extends Source {
+
+        private final List<K> keys = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+        private int next;
+
+        MemtableSource(RedBlackBST<Object, K> table, K lo, K hi, int age) {
+            super(age);
+            for (RedBlackBST<Object, K>.Node n : table.inOrder(lo, hi)) {
+                keys.add(n.getKey());
+                values.add(n.getValue());
+            }
+        }
+
+        @Override
+        boolean advance() {
+            if (next == keys.size()) return false;
+            key = keys.get(next);
+            value = values.get(next++);
+            return true;
+        }
+    }
+
+    /**
+     * The entries of a run from the least key >= lo, read on demand.
+     */
+    private class RunSource extends Source {
+
+        private final Run run;
+        private final K lo;
+        private long offset;
+
+        RunSource(Run run, K lo, int age) {
+            super(age);
+            this.run = run;
+            this.lo = lo;
+            this.offset = lo == null ? 0 : run.seek(lo);
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            while (offset < run.end) {
+                Record record = run.read(offset);
+                offset = record.next;
+                if (lo != null && cmp(record.key, lo) < 0) continue;
+                key = record.key;
+                value = record.value;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Merges sources into one ascending sequence of distinct keys, taking each key's
+     * entry from the newest source that has it.
+     */
+    private class Merger {
+
+        private final PriorityQueue<Source> heap = new PriorityQueue<>((a, b) -> {
+            int kCmp = cmp(a.key, b.key);
+            return kCmp != 0 ? kCmp : Integer.compare(a.age, b.age);
+        });
+        K key;
+        Object value;
+
+        Merger(List<Source> sources) throws IOException {
+            for (Source source : sources) advance(source);
+        }
+
+        /**
+         * @return false once every source is exhausted
+         */
+        boolean next() throws IOException {
+            if (heap.isEmpty()) return false;
+            Source newest = heap.poll();
+            key = newest.key;
+            value = newest.value;
+            advance(newest);
+            while (!heap.isEmpty() && cmp(heap.peek().key, key) == 0) advance(heap.poll()); // shadowed
+            return true;
+        }
+
+        private void advance(Source source) throws IOException {
+            if (source.advance()) heap.add(source);
+        }
+    }
+}
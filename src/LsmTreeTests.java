@@ -0,0 +1,147 @@
+/*
+ * A set of unit tests covering the log-structured merge tree and it's Bloom filters.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * A set of unit tests comparing an LsmTree against a TreeMap across flushes and compactions.
+ */
+public class LsmTreeTests {
+
+    @Test
+    public void testAgainstTreeMap() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("lsm");
+        TreeMap<Integer, String> reference = new TreeMap<>();
+        Random gen = new Random();
+        try (LsmTree<String, Integer> testTree = new LsmTree<>(dir, 64, 3)) {
+            for (int i = 0; i < 20000; i++) {
+                int key = gen.nextInt(2000);
+                if (gen.nextInt(4) == 0) {
+                    testTree.remove(key);
+                    reference.remove(key);
+                } else {
+                    testTree.put("v" + i, key);
+                    reference.put(key, "v" + i);
+                }
+                if (i % 97 == 0) {
+                    int probe = gen.nextInt(2100);
+                    Assert.assertEquals(reference.get(probe), testTree.get(probe));
+                }
+            }
+            testTree.flush();
+            Assert.assertTrue(testTree.runCount() < 20000 / 64); // compaction merged runs
+            for (int key = -10; key < 2100; key++) {
+                Assert.assertEquals(reference.get(key), testTree.get(key));
+            }
+            Assert.assertEquals(new ArrayList<>(reference.values()), testTree.range(null, null));
+            for (int i = 0; i < 50; i++) {
+                int lo = gen.nextInt(2000), hi = lo + gen.nextInt(300);
+                Assert.assertEquals(new ArrayList<>(reference.subMap(lo, true, hi, true).values()), testTree.range(lo, hi));
+            }
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            Assert.assertEquals(0, files.count()); // runs are deleted on close
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testTombstonesShadowOlderRuns() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("lsm");
+        try (LsmTree<String, String> testTree = new LsmTree<>(dir, 4, 4)) {
+            for (int i = 0; i < 8; i++) testTree.put("old" + i, "k" + i);
+            testTree.flush();
+            testTree.remove("k3");
+            testTree.put("new5", "k5");
+            Assert.assertNull(testTree.get("k3")); // tombstone in the memtable
+            testTree.flush();
+            Assert.assertNull(testTree.get("k3")); // tombstone in a run
+            Assert.assertEquals("new5", testTree.get("k5"));
+            Assert.assertEquals(Arrays.asList("old2", "old4", "new5"), testTree.range("k2", "k5"));
+            Assert.assertFalse(testTree.contains("k9"));
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testConcurrentReadsDuringCompaction() throws Exception {
+        Path dir = Files.createTempDirectory("lsm");
+        try (LsmTree<Integer, Integer> testTree = new LsmTree<>(dir, 100, 2)) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) testTree.put(i, i);
+            });
+            writer.start();
+            Random gen = new Random();
+            while (writer.isAlive()) {
+                int key = gen.nextInt(20000);
+                Integer found = testTree.get(key);
+                Assert.assertTrue(found == null || found == key);
+            }
+            writer.join();
+            testTree.flush();
+            for (int i = 0; i < 20000; i += 7) Assert.assertEquals((Integer) i, testTree.get(i));
+            Assert.assertEquals(20000, testTree.range(null, null).size());
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testFlushErrorIsReported() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("lsm");
+        LsmTree<Serializable, Integer> testTree = new LsmTree<>(dir, 1, 4);
+        testTree.put(new Unwritable(), 1); // fails the background flush with an Error
+        try {
+            testTree.flush();
+            Assert.fail("flush should report the background Error");
+        } catch (IllegalStateException expected) {
+            Assert.assertTrue(expected.getCause() instanceof AssertionError);
+        }
+        for (int i = 0; i < 10; i++) { // would wait forever for the frozen memtables to flush
+            try {
+                testTree.put("v" + i, i);
+                Assert.fail("put after a failure should fail");
+            } catch (IllegalStateException expected) {
+                // reported
+            }
+        }
+        testTree.close();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(f -> f.toFile().delete());
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * An object whose serialization throws an Error.
+     */
+    private static class Unwritable implements Serializable {
+
+        private void writeObject(ObjectOutputStream out) {
+            throw new AssertionError("unwritable");
+        }
+    }
+
+    @Test
+    public void testBloomFilter() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) filter.add(i);
+        for (int i = 0; i < 10000; i++) Assert.assertTrue(filter.mightContain(i)); // no false negatives
+        int falsePositives = 0;
+        for (int i = 10000; i < 110000; i++) if (filter.mightContain(i)) falsePositives++;
+        Assert.assertTrue(falsePositives < 2000); // about 1% expected
+        Assert.assertEquals(0.01, filter.falsePositiveRate(), 0.01);
+        filter.clear();
+        Assert.assertFalse(filter.mightContain(1));
+        Assert.assertEquals(0.0, filter.falsePositiveRate(), 0.0);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * A set of unit tests covering the multi-version red black BST.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+import util.ListUtils;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A set of unit tests covering snapshot isolation and version reclamation.
+ */
+public class MvccBSTTests {
+
+    @Test
+    public void testSnapshotIsolation() {
+        MvccRedBlackBST<Integer, Integer> testBST = new MvccRedBlackBST<>();
+        List<Integer> elements = ListUtils.genIntList(1000, 1000);
+        for (int x : elements) testBST.put(x, x);
+
+        MvccRedBlackBST<Integer, Integer>.Snapshot snap = testBST.snapshot();
+        for (int x : elements) testBST.remove(x);
+        for (int x : ListUtils.genIntList(1000, 1000)) testBST.put(-x, x);
+
+        List<Integer> sorted = new ArrayList<>(elements);
+        Collections.sort(sorted);
+        List<Integer> seen = new ArrayList<>();
+        for (int x : snap) seen.add(x);
+        Assert.assertEquals(sorted, seen);
+        for (int x : elements) Assert.assertEquals((Integer) x, snap.get(x));
+        snap.close();
+    }
+
+    @Test
+    public void testDuplicates() {
+        MvccRedBlackBST<String, Integer> testBST = new MvccRedBlackBST<>();
+        testBST.put("a", 1);
+        testBST.put("b", 1);
+        MvccRedBlackBST<String, Integer>.Snapshot snap = testBST.snapshot();
+        Assert.assertEquals("b", testBST.remove(1));
+        Assert.assertEquals("a", testBST.get(1));
+        Assert.assertEquals("b", snap.get(1));
+        Assert.assertEquals(Arrays.asList("a", "b"), toList(snap));
+        Assert.assertEquals("a", testBST.remove(1));
+        Assert.assertNull(testBST.remove(1));
+        Assert.assertEquals(0, testBST.size());
+        snap.close();
+    }
+
+    @Test
+    public void testReclaim() {
+        MvccRedBlackBST<Integer, Integer> testBST = new MvccRedBlackBST<>();
+        for (int i = 0; i < 1000; i++) testBST.put(i, i);
+        MvccRedBlackBST<Integer, Integer>.Snapshot snap = testBST.snapshot();
+        for (int i = 0; i < 1000; i++) testBST.remove(i);
+
+        Assert.assertEquals(0, testBST.reclaim()); // still referenced by snap
+        Assert.assertEquals(1000, toList(snap).size());
+        snap.close();
+        Assert.assertEquals(1000, testBST.reclaim());
+        Assert.assertEquals(0, testBST.reclaim());
+        Assert.assertTrue(toList(testBST.snapshot()).isEmpty());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws InterruptedException {
+        final MvccRedBlackBST<Integer, Integer> testBST = new MvccRedBlackBST<>();
+        for (int i = 0; i < 2000; i++) testBST.put(i, i);
+        testBST.startReclaimer(1, TimeUnit.MILLISECONDS);
+        final AtomicBoolean stop = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            Random gen = new Random();
+            while (!stop.get()) {
+                int x = gen.nextInt(2000);
+                if (testBST.remove(x) != null) testBST.put(x, x);
+            }
+        });
+        writer.start();
+        for (int i = 0; i < 200; i++) {
+            try (MvccRedBlackBST<Integer, Integer>.Snapshot snap = testBST.snapshot()) {
+                List<Integer> first = toList(snap);
+                Assert.assertEquals(first, toList(snap));
+                for (int j = 1; j < first.size(); j++) Assert.assertTrue(first.get(j - 1) < first.get(j));
+            }
+        }
+        stop.set(true);
+        writer.join();
+        testBST.close();
+        Assert.assertEquals(2000, testBST.size());
+    }
+
+    private static <T> List<T> toList(Iterable<T> it) {
+        List<T> out = new ArrayList<>();
+        for (T x : it) out.add(x);
+        return out;
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * A multi-version red black tree supporting consistent snapshot reads.
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A red black tree in which every object is stamped with the version that inserted it
+ * and the version that removed it, so readers can open a snapshot and see the tree exactly
+ * as it was at that version while writers continue. Each key's node holds a chain of
+ * versions (newest first); put pushes a version and remove ends the newest live one, which
+ * preserves the duplicate semantics of BST at every snapshot. Versions no open snapshot can
+ * see are freed by reclaim, optionally on a background thread.
+ * @param <T> the type of the object to be inserted
+ * @param <K> the type of the keys associated with the objects
+ */
+class MvccRedBlackBST<T, K extends Comparable> implements AutoCloseable {
+
+    /** The number of keys visited per lock acquisition by snapshot scans and reclamation. */
+    private static final int BATCH_SIZE = 256;
+    /** The end version of an object that has not been removed. */
+    private static final long LIVE = Long.MAX_VALUE;
+
+    private final RedBlackBST<Chain<T>, K> tree = new RedBlackBST<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /** Open snapshot versions mapped to the number of snapshots open at that version, guarded by itself. */
+    private final TreeMap<Long, Integer> snapshots = new TreeMap<>();
+    private volatile long clock; // the latest committed version
+    private int size; // live objects at the latest version, guarded by lock
+    private ScheduledExecutorService reclaimer;
+
+    /**
+     * Inserts a object/key pair as a new version. O(log n)
+     * @param object the object to insert
+     * @param key the key for that object
+     */
+    public void put(T object, K key) {
+        lock.writeLock().lock();
+        try {
+            long version = clock + 1;
+            Chain<T> chain = tree.isEmpty() ? null : tree.get(key);
+            if (chain == null) {
+                chain = new Chain<>();
+                tree.put(chain, key);
+            }
+            chain.head = new Version<>(object, version, chain.head);
+            size++;
+            clock = version;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the most recently inserted live object associated with key as a new
+     * version. Snapshots opened earlier continue to see it. O(log n)
+     * @param key the key associated with the object to be removed
+     * @return the removed object, or null if no live object is associated with key
+     */
+    public T remove(K key) {
+        lock.writeLock().lock();
+        try {
+            long version = clock + 1;
+            Version<T> live = visible(key, clock);
+            if (live == null) return null;
+            live.end = version;
+            size--;
+            clock = version;
+            return live.value;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the object associated with key at the latest version. O(log n)
+     * @param key the key associated with the desired object
+     * @return the most recently inserted live object associated with key, or null
+     */
+    public T get(K key) {
+        lock.readLock().lock();
+        try {
+            Version<T> v = visible(key, clock);
+            return v == null ? null : v.value;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long version() { return clock; }
+
+    /**
+     * Opens a snapshot of the latest version. The snapshot must be closed so that the
+     * versions it references can be reclaimed.
+     * @return a snapshot of the tree at the current version
+     */
+    public Snapshot snapshot() {
+        synchronized (snapshots) {
+            long version = clock;
+            snapshots.merge(version, 1, Integer::sum);
+            return new Snapshot(version);
+        }
+    }
+
+    /**
+     * Frees every version that is not visible to the latest version or any open
+     * snapshot, and removes keys left without versions. Holds the write lock for
+     * one batch of keys at a time so writers are not stalled for a full pass.
+     * @return the number of versions freed
+     */
+    public int reclaim() {
+        long oldest;
+        synchronized (snapshots) {
+            oldest = snapshots.isEmpty() ? clock : snapshots.firstKey();
+        }
+
+        int freed = 0;
+        K last = null;
+        boolean done = false;
+        List<K> empty = new ArrayList<>();
+        while (!done) {
+            lock.writeLock().lock();
+            try {
+                RedBlackBST<Chain<T>, K>.Node next = first(last);
+                for (int i = 0; i < BATCH_SIZE && next != tree.NODE_DNE; i++) {
+                    Chain<T> chain = next.getValue();
+                    freed += chain.prune(oldest);
+                    if (chain.head == null) empty.add(next.getKey());
+                    last = next.getKey();
+                    next = tree.higherNode(last);
+                }
+                done = next == tree.NODE_DNE;
+                for (K key : empty) tree.remove(key);
+                empty.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Runs reclaim on a background daemon thread every period.
+     * @param period the time between reclamation passes
+     * @param unit the unit of period
+     */
+    public synchronized void startReclaimer(long period, TimeUnit unit) {
+        if (reclaimer != null) throw new IllegalStateException("Reclaimer already started.");
+        reclaimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mvcc-reclaimer");
+            t.setDaemon(true);
+            return t;
+        });
+        reclaimer.scheduleWithFixedDelay(this::reclaim, period, period, unit);
+    }
+
+    /**
+     * Stops the background reclaimer, if it was started.
+     */
+    @Override
+    public synchronized void close() {
+        if (reclaimer != null) reclaimer.shutdownNow();
+        reclaimer = null;
+    }
+
+    /**
+     * Returns the newest version associated with key that is visible at version,
+     * must be called while holding the read or write lock.
+     * @param key the key associated with the desired object
+     * @param version the version to read at
+     * @return the visible version, or null if there is none
+     */
+    private Version<T> visible(K key, long version) {
+        if (tree.isEmpty()) return null;
+        Chain<T> chain = tree.get(key);
+        return chain == null ? null : chain.visible(version);
+    }
+
+    /**
+     * Returns the node following last in key order, or the minimum node if last is
+     * null, must be called while holding the read or write lock.
+     * @param last the last key processed, or null to start from the minimum
+     * @return the next node to process, or NODE_DNE if there is none
+     */
+    private RedBlackBST<Chain<T>, K>.Node first(K last) {
+        if (tree.isEmpty()) return tree.NODE_DNE;
+        return last == null ? tree.localMin(tree.root) : tree.higherNode(last);
+    }
+
+    /**
+     * A consistent, read-only view of the tree at a fixed version. Iteration visits
+     * objects in key order (duplicates in insertion order) and only holds the read lock
+     * while copying one batch of keys.
+     */
+    class Snapshot implements Iterable<T>, AutoCloseable {
+
+        private final long version;
+        private boolean closed;
+
+        private Snapshot(long version) {
+            this.version = version;
+        }
+
+        long getVersion() { return version; }
+
+        /**
+         * Gets the object associated with key as of this snapshot's version. O(log n)
+         * @param key the key associated with the desired object
+         * @return the most recently inserted object visible to this snapshot, or null
+         */
+        public T get(K key) {
+            checkOpen();
+            lock.readLock().lock();
+            try {
+                Version<T> v = visible(key, version);
+                return v == null ? null : v.value;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        public boolean contains(K key) { return get(key) != null; }
+
+        @Override
+        public Iterator<T> iterator() {
+            checkOpen();
+            return new SnapshotIterator();
+        }
+
+        /**
+         * Releases this snapshot, allowing the versions only it could see to be reclaimed.
+         */
+        @Override
+        public void close() {
+            synchronized (snapshots) {
+                if (closed) return;
+                closed = true;
+                if (snapshots.merge(version, -1, Integer::sum) == 0) snapshots.remove(version);
+            }
+        }
+
+        private void checkOpen() {
+            if (closed) throw new IllegalStateException("Snapshot is closed.");
+        }
+
+        /**
+         * Copies the visible objects of BATCH_SIZE keys at a time.
+         */
+        private class SnapshotIterator implements Iterator<T> {
+
+            private final List<T> batch = new ArrayList<>();
+            private int pos;
+            private K last;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                while (pos == batch.size() && !exhausted) fill();
+                return pos < batch.size();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return batch.get(pos++);
+            }
+
+            private void fill() {
+                checkOpen();
+                batch.clear();
+                pos = 0;
+                lock.readLock().lock();
+                try {
+                    RedBlackBST<Chain<T>, K>.Node next = first(last);
+                    for (int i = 0; i < BATCH_SIZE && next != tree.NODE_DNE; i++) {
+                        next.getValue().collect(version, batch);
+                        last = next.getKey();
+                        next = tree.higherNode(last);
+                    }
+                    exhausted = next == tree.NODE_DNE;
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * The versions associated with a single key, newest first.
+     */
+    private static class Chain<T> {
+
+        private Version<T> head;
+
+        /**
+         * @param version the version to read at
+         * @return the newest version visible at version, or null if there is none
+         */
+        Version<T> visible(long version) {
+            for (Version<T> v = head; v != null; v = v.older) {
+                if (v.isVisible(version)) return v;
+            }
+            return null;
+        }
+
+        /**
+         * Appends the objects visible at version to out, oldest first.
+         * @param version the version to read at
+         * @param out the list to append to
+         */
+        void collect(long version, List<T> out) {
+            int start = out.size();
+            for (Version<T> v = head; v != null; v = v.older) {
+                if (v.isVisible(version)) out.add(start, v.value);
+            }
+        }
+
+        /**
+         * Unlinks every version removed at or before oldest, since neither the latest
+         * version nor any open snapshot can see it.
+         * @param oldest the oldest version that may still be read
+         * @return the number of versions unlinked
+         */
+        int prune(long oldest) {
+            int freed = 0;
+            while (head != null && head.end <= oldest) {
+                head = head.older;
+                freed++;
+            }
+            for (Version<T> v = head; v != null && v.older != null; ) {
+                if (v.older.end <= oldest) {
+                    v.older = v.older.older;
+                    freed++;
+                } else {
+                    v = v.older;
+                }
+            }
+            return freed;
+        }
+    }
+
+    /**
+     * A single object and the versions between which it is visible.
+     */
+    private static class Version<T> {
+
+        private final T value;
+        private final long begin; // the version that inserted value
+        private long end = LIVE; // the version that removed value
+        private Version<T> older;
+
+        Version(T value, long begin, Version<T> older) {
+            this.value = value;
+            this.begin = begin;
+            this.older = older;
+        }
+
+        boolean isVisible(long version) { return begin <= version && version < end; }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Measures the allocation rate of insert/delete cycles with and without node pooling.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Runs the same churn workload (remove one key, insert another, so the tree size stays
+ * fixed) against an unpooled and a pooled RedBlackBST and prints the bytes the running
+ * thread allocated per cycle, read from com.sun.management.ThreadMXBean. Keys and objects
+ * are boxed up front so the only allocations measured are the tree's own.
+ * Usage: java PoolAllocationHarness [treeSize] [cycles]
+ */
+class PoolAllocationHarness {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int cycles = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+        if (!THREADS.isThreadAllocatedMemorySupported()) throw new IllegalStateException("Thread allocation counting is not supported by this JVM.");
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        Integer[] keys = new Integer[2 * size];
+        for (int i = 0; i < keys.length; i++) keys[i] = i;
+        for (int round = 0; round < 3; round++) { // the first rounds warm up the JIT
+            report("unpooled", size, cycles, measure(new RedBlackBST<>(), keys, size, cycles));
+            report("pooled  ", size, cycles, measure(new RedBlackBST<>(64), keys, size, cycles));
+        }
+    }
+
+    /**
+     * Fills tree with size keys, then runs cycles remove/insert pairs over a sliding window
+     * of keys.
+     * @return the bytes allocated by the cycles (not the fill)
+     */
+    private static long measure(RedBlackBST<Integer, Integer> tree, Integer[] keys, int size, int cycles) {
+        Random gen = new Random(42);
+        boolean[] present = new boolean[keys.length];
+        for (int i = 0; i < size; i++) {
+            int k = gen.nextInt(keys.length);
+            if (!present[k]) {
+                tree.put(keys[k], keys[k]);
+                present[k] = true;
+            }
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(thread);
+        for (int c = 0; c < cycles; c++) {
+            int out = gen.nextInt(keys.length), in = gen.nextInt(keys.length);
+            if (present[out]) {
+                tree.remove(keys[out]);
+                present[out] = false;
+            }
+            if (!present[in]) {
+                tree.put(keys[in], keys[in]);
+                present[in] = true;
+            }
+        }
+        return THREADS.getThreadAllocatedBytes(thread) - before;
+    }
+
+    private static void report(String name, int size, int cycles, long bytes) {
+        System.out.printf("%s size=%d cycles=%d allocated=%d bytes (%.2f bytes/cycle)%n", name, size, cycles, bytes, (double) bytes / cycles);
+    }
+}
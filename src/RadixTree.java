@@ -0,0 +1,324 @@
+/*
+ * A compressed radix tree specialized for String keys.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * An ordered String keyed container with the BST API, implemented as a compressed radix
+ * (PATRICIA) tree. A shared prefix is stored once on the edge leading to it and every
+ * character of a key is compared at most once per lookup, instead of re-comparing shared
+ * prefixes from character zero at every level as BST.cmp does. Children are kept sorted
+ * by their first character, so the tree iterates in String.compareTo order, and every
+ * node caches the number of objects in it's subtree for select and rank.
+ * @param <T> the type of the object to be inserted
+ */
+class RadixTree<T> {
+
+    private final RNode root = new RNode(null, "");
+
+    /**
+     * Inserts a object/key pair into the tree, splitting an edge if key diverges from
+     * it part way. O(key length)
+     * @param object the object to insert
+     * @param key the key for that object
+     */
+    public void put(T object, String key) {
+        RNode node = root;
+        int i = 0;
+        node.count++;
+        while (i < key.length()) {
+            int c = node.childIndex(key.charAt(i));
+            if (c < 0) {
+                RNode leaf = new RNode(node, key.substring(i));
+                node.insertChild(-c - 1, leaf);
+                node = leaf;
+                node.count++;
+                break;
+            }
+            RNode child = node.children[c];
+            int common = commonPrefix(child.label, key, i);
+            if (common < child.label.length()) child = split(child, common);
+            child.count++;
+            node = child;
+            i += common;
+        }
+        node.pushValue(object);
+    }
+
+    /**
+     * Gets the object associated with the specified key. If there are multiple objects
+     * associated with that key the most recently inserted one is returned. O(key length)
+     * @param key the key associated with the desired object
+     * @return the object associated with key, or null if there is none
+     */
+    public T get(String key) {
+        RNode node = find(key);
+        return node == null || node.values == null ? null : node.values.peek();
+    }
+
+    /**
+     * Removes the most recently inserted object associated with key, merging edges
+     * that are left with a single child. O(key length)
+     * @param key the key associated with the object to be removed
+     * @return the removed object, or null if there is none
+     */
+    public T remove(String key) {
+        RNode node = find(key);
+        if (node == null || node.values == null) return null;
+        T val = node.values.pop();
+        if (node.values.isEmpty()) node.values = null;
+        for (RNode next = node; next != null; next = next.parent) next.count--;
+        compact(node);
+        return val;
+    }
+
+    public int size() { return root.count; }
+    public boolean isEmpty() { return root.count == 0; }
+    public boolean contains(String key) { return get(key) != null; }
+
+    /**
+     * @return the object associated with the least key in the tree
+     */
+    public T min() {
+        if (isEmpty()) throw new IllegalStateException("Empty tree.");
+        RNode next = root;
+        while (next.values == null) next = next.children[0]; // a key sorts before any of it's extensions
+        return next.values.peek();
+    }
+
+    /**
+     * @return the object associated with the greatest key in the tree
+     */
+    public T max() {
+        if (isEmpty()) throw new IllegalStateException("Empty tree.");
+        RNode next = root;
+        while (next.childCount > 0) next = next.children[next.childCount - 1];
+        return next.values.peek();
+    }
+
+    /**
+     * Returns the object associated with the nth smallest key. O(key length * alphabet)
+     * @param n the rank of the desired element (least - greatest)
+     * @return the element with the nth smallest key
+     */
+    public T select(int n) {
+        if (n <= 0 || n > root.count) throw new IllegalArgumentException("Rank cannot be less than 0 or greater than the size of the BST.");
+        RNode next = root;
+        int rem = n;
+        while (true) {
+            int own = next.valCount();
+            if (rem <= own) return next.values.peek();
+            rem -= own;
+            for (int c = 0; c < next.childCount; c++) {
+                if (rem <= next.children[c].count) {
+                    next = next.children[c];
+                    break;
+                }
+                rem -= next.children[c].count;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of objects associated with keys strictly less than key, so
+     * select(rank(key) + 1) is associated with key if key is in the tree.
+     * @param key the key to rank, which need not be in the tree
+     * @return the number of objects with a lesser key
+     */
+    public int rank(String key) {
+        RNode node = root;
+        int i = 0, rank = 0;
+        while (i < key.length()) {
+            rank += node.valCount(); // node's key is a proper prefix of key
+            char ch = key.charAt(i);
+            int c = 0;
+            while (c < node.childCount && node.children[c].label.charAt(0) < ch) rank += node.children[c++].count;
+            if (c == node.childCount || node.children[c].label.charAt(0) != ch) return rank;
+
+            RNode child = node.children[c];
+            int common = commonPrefix(child.label, key, i);
+            if (common < child.label.length()) {
+                boolean less = i + common < key.length() && child.label.charAt(common) < key.charAt(i + common);
+                return less ? rank + child.count : rank;
+            }
+            node = child;
+            i += common;
+        }
+        return rank;
+    }
+
+    /**
+     * Gets the object associated with the greatest key strictly less than key.
+     * @param key the key to compare against, which need not be in the tree
+     * @return the object associated with next least key, if it exists, if not null
+     */
+    public T predecessor(String key) {
+        int rank = rank(key);
+        return rank == 0 ? null : select(rank);
+    }
+
+    /**
+     * Returns every object whose key starts with prefix, in key order (duplicates in
+     * insertion order). O(prefix length + matches)
+     * @param prefix the prefix to scan for
+     * @return a list of the objects associated with keys beginning with prefix
+     */
+    public List<T> prefixScan(String prefix) {
+        List<T> found = new ArrayList<>();
+        RNode node = root;
+        int i = 0;
+        while (i < prefix.length()) {
+            int c = node.childIndex(prefix.charAt(i));
+            if (c < 0) return found;
+            RNode child = node.children[c];
+            int common = commonPrefix(child.label, prefix, i);
+            if (i + common < prefix.length() && common < child.label.length()) return found; // diverged inside the edge
+            node = child;
+            i += common;
+        }
+
+        Deque<RNode> pending = new ArrayDeque<>(); // explicit stack, keys may be arbitrarily long
+        pending.push(node);
+        while (!pending.isEmpty()) {
+            RNode next = pending.pop();
+            if (next.values != null) found.addAll(next.values);
+            for (int c = next.childCount - 1; c >= 0; c--) pending.push(next.children[c]);
+        }
+        return found;
+    }
+
+    /**
+     * Finds the node whose path spells exactly key.
+     * @param key the key to search for
+     * @return the node for key, or null if key does not end at a node
+     */
+    private RNode find(String key) {
+        RNode node = root;
+        int i = 0;
+        while (i < key.length()) {
+            int c = node.childIndex(key.charAt(i));
+            if (c < 0) return null;
+            node = node.children[c];
+            if (!key.startsWith(node.label, i)) return null;
+            i += node.label.length();
+        }
+        return node;
+    }
+
+    /**
+     * Splits the edge leading to n after it's first at characters, inserting a new node.
+     * @param n the node whose edge is split
+     * @param at the length of the new node's label
+     * @return the new node, which has n as it's only child
+     */
+    private RNode split(RNode n, int at) {
+        RNode mid = new RNode(n.parent, n.label.substring(0, at));
+        mid.count = n.count;
+        n.parent.children[n.parent.childIndex(n.label.charAt(0))] = mid;
+        n.label = n.label.substring(at);
+        n.parent = mid;
+        mid.insertChild(0, n);
+        return mid;
+    }
+
+    /**
+     * Removes n if it holds no objects and no children, and merges any node left
+     * holding no objects and a single child with that child.
+     * @param n the node an object was just removed from
+     */
+    private void compact(RNode n) {
+        if (n == root || n.values != null) return;
+        if (n.childCount == 0) {
+            RNode p = n.parent;
+            p.removeChild(p.childIndex(n.label.charAt(0)));
+            if (p != root && p.values == null && p.childCount == 1) merge(p);
+        } else if (n.childCount == 1) {
+            merge(n);
+        }
+    }
+
+    /**
+     * Replaces n with it's only child, prepending n's label to the child's label.
+     * @param n the node to remove
+     */
+    private void merge(RNode n) {
+        RNode child = n.children[0];
+        child.label = n.label + child.label;
+        child.parent = n.parent;
+        n.parent.children[n.parent.childIndex(n.label.charAt(0))] = child;
+    }
+
+    /**
+     * @return the number of leading characters label shares with key from index i
+     */
+    private static int commonPrefix(String label, String key, int i) {
+        int j = 0, max = Math.min(label.length(), key.length() - i);
+        while (j < max && label.charAt(j) == key.charAt(i + j)) j++;
+        return j;
+    }
+
+    class RNode {
+
+        private RNode parent;
+        private String label; // the characters on the edge from parent to this node
+        private RNode[] children; // sorted by first label character, null until the first child
+        private int childCount;
+        private Stack<T> values; // objects whose key ends at this node, null if there are none
+        private int count; // number of objects in the subtree rooted at this node
+
+        RNode(RNode parent, String label) {
+            this.parent = parent;
+            this.label = label;
+        }
+
+        int valCount() { return values == null ? 0 : values.size(); }
+
+        void pushValue(T val) {
+            if (values == null) values = new Stack<>();
+            values.push(val);
+        }
+
+        /**
+         * Binary searches the children for the one whose label starts with ch.
+         * @param ch the first character of the desired edge
+         * @return the child's index, or (-(insertion point) - 1) if there is none
+         */
+        int childIndex(char ch) {
+            int lo = 0, hi = childCount - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                char m = children[mid].label.charAt(0);
+                if (m < ch) lo = mid + 1;
+                else if (m > ch) hi = mid - 1;
+                else return mid;
+            }
+            return -(lo + 1);
+        }
+
+        void insertChild(int idx, RNode child) {
+            if (children == null || childCount == children.length) {
+                RNode[] grown = newArray(Math.max(2, childCount * 2));
+                if (children != null) System.arraycopy(children, 0, grown, 0, childCount);
+                children = grown;
+            }
+            System.arraycopy(children, idx, children, idx + 1, childCount - idx);
+            children[idx] = child;
+            childCount++;
+        }
+
+        void removeChild(int idx) {
+            System.arraycopy(children, idx + 1, children, idx, childCount - idx - 1);
+            children[--childCount] = null;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private RNode[] newArray(int size) {
+            return (RNode[]) new RadixTree.RNode[size];
+        }
+    }
+}
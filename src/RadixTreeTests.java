@@ -0,0 +1,98 @@
+/*
+ * A set of unit tests covering the String keyed radix tree.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * A set of unit tests comparing the radix tree against a reference TreeMap, using keys
+ * drawn from a small alphabet so that many keys share long prefixes.
+ */
+public class RadixTreeTests {
+
+    @Test
+    public void testAgainstTreeMap() {
+        RadixTree<String> testTree = new RadixTree<>();
+        TreeMap<String, Deque<String>> reference = new TreeMap<>();
+        Random gen = new Random();
+        int size = 0;
+        for (int i = 0; i < 20000; i++) {
+            String key = genKey(gen);
+            if (gen.nextInt(3) == 0) {
+                Deque<String> vals = reference.get(key);
+                String expected = vals == null ? null : vals.pop();
+                if (vals != null && vals.isEmpty()) reference.remove(key);
+                if (expected != null) size--;
+                Assert.assertEquals(expected, testTree.remove(key));
+            } else {
+                String val = key + "#" + i;
+                testTree.put(val, key);
+                reference.computeIfAbsent(key, k -> new ArrayDeque<>()).push(val);
+                size++;
+            }
+            Assert.assertEquals(size, testTree.size());
+            Deque<String> vals = reference.get(key);
+            Assert.assertEquals(vals == null ? null : vals.peek(), testTree.get(key));
+        }
+
+        int rank = 0;
+        for (Map.Entry<String, Deque<String>> e : reference.entrySet()) {
+            Assert.assertEquals(rank, testTree.rank(e.getKey()));
+            Assert.assertEquals(e.getValue().peek(), testTree.select(rank + 1));
+            Map.Entry<String, Deque<String>> lower = reference.lowerEntry(e.getKey());
+            Assert.assertEquals(lower == null ? null : lower.getValue().peek(), testTree.predecessor(e.getKey()));
+            rank += e.getValue().size();
+        }
+        Assert.assertEquals(reference.firstEntry().getValue().peek(), testTree.min());
+        Assert.assertEquals(reference.lastEntry().getValue().peek(), testTree.max());
+    }
+
+    @Test
+    public void testPrefixScan() {
+        RadixTree<String> testTree = new RadixTree<>();
+        TreeMap<String, List<String>> reference = new TreeMap<>();
+        Random gen = new Random();
+        for (int i = 0; i < 5000; i++) {
+            String key = genKey(gen);
+            testTree.put(key, key);
+            reference.computeIfAbsent(key, k -> new ArrayList<>()).add(key);
+        }
+        for (int i = 0; i < 500; i++) {
+            String key = genKey(gen);
+            String prefix = key.substring(0, gen.nextInt(key.length() + 1));
+            List<String> expected = new ArrayList<>();
+            for (Map.Entry<String, List<String>> e : reference.tailMap(prefix).entrySet()) {
+                if (!e.getKey().startsWith(prefix)) break;
+                expected.addAll(e.getValue());
+            }
+            Assert.assertEquals(expected, testTree.prefixScan(prefix));
+        }
+    }
+
+    @Test
+    public void testEmptyAndPrefixKeys() {
+        RadixTree<Integer> testTree = new RadixTree<>();
+        testTree.put(1, "");
+        testTree.put(2, "app");
+        testTree.put(3, "apple");
+        testTree.put(4, "ap");
+        Assert.assertEquals((Integer) 1, testTree.min());
+        Assert.assertEquals((Integer) 3, testTree.max());
+        Assert.assertEquals(Arrays.asList(4, 2, 3), testTree.prefixScan("ap"));
+        Assert.assertNull(testTree.get("a"));
+        Assert.assertEquals((Integer) 2, testTree.remove("app"));
+        Assert.assertEquals((Integer) 3, testTree.get("apple"));
+        Assert.assertEquals((Integer) 4, testTree.predecessor("apple"));
+        Assert.assertEquals(3, testTree.size());
+    }
+
+    private static String genKey(Random gen) {
+        StringBuilder key = new StringBuilder("prefix/");
+        int len = gen.nextInt(6);
+        for (int i = 0; i < len; i++) key.append((char) ('a' + gen.nextInt(3)));
+        return gen.nextInt(10) == 0 ? key.substring(0, gen.nextInt(key.length())) : key.toString();
+    }
+}
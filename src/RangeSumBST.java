@@ -0,0 +1,50 @@
+/*
+ * A red black tree that answers prefix and range sums over its values.
+ */
+
+/**
+ * A red black tree of long values that maintains the sum of every subtree, so prefix
+ * and range sums are answered in O(log n) instead of a linear scan.
+ * @param <K> the type of the keys associated with the values
+ */
+class RangeSumBST<K extends Comparable> extends AugmentedRedBlackBST<Long, K, Long> {
+
+    RangeSumBST() {
+        super(new SumAugmentation<>());
+    }
+
+    /**
+     * Sums the values of all keys with lo <= key <= hi. O(log n)
+     * @param lo the least key of the range (inclusive)
+     * @param hi the greatest key of the range (inclusive)
+     * @return the sum of the values in the range
+     */
+    public long sum(K lo, K hi) {
+        return aggregate(lo, hi);
+    }
+
+    /**
+     * Sums the values of all keys less than or equal to hi. O(log n)
+     * @param hi the greatest key to include (inclusive)
+     * @return the sum of the values in the prefix
+     */
+    public long prefixSum(K hi) {
+        return headAggregate(hi);
+    }
+
+    /**
+     * @return the sum of every value in the tree. O(1)
+     */
+    public long sum() {
+        return aggregate();
+    }
+
+    /**
+     * Sums the values of a subtree, null values count as 0.
+     */
+    private static class SumAugmentation<K> implements Augmentation<Long, K, Long> {
+        public Long identity() { return 0L; }
+        public Long lift(K key, Long value) { return value == null ? 0L : value; }
+        public Long combine(Long left, Long right) { return left + right; }
+    }
+}
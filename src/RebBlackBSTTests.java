@@ -6,8 +6,7 @@ import org.junit.Assert;
 import org.junit.Test;
 import util.ListUtils;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 /**
  * A set of unit tests covering the basic functions of the red black BST class.
@@ -52,10 +51,172 @@ public class RebBlackBSTTests {
         }
     }
 
+    @Test
+    public void testSelect() {
+        TestRedBlackBST<Integer, Integer> testBST = new TestRedBlackBST<>();
+        List<Integer> elements = ListUtils.genIntList(10000, 1000);
+        for (int x : elements) {
+            testBST.put(x, x);
+        }
+        Assert.assertTrue(testBST.hasValidCounts());
+        Collections.sort(elements);
+        for (int i = 1; i <= elements.size(); i++) {
+            Assert.assertEquals(elements.get(i - 1), testBST.select(i));
+        }
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            Assert.assertEquals(elements.indexOf(elements.get(i)), testBST.rank(elements.get(i)));
+        }
+    }
+
+    /**
+     * Applies random puts and removes (of present and missing keys, with many
+     * duplicates) to both the tree and a reference TreeMap of key multiplicities,
+     * checking size, contains, min and max after every operation and every subtree
+     * count, select and rank periodically.
+     */
+    @Test
+    public void testCountsAgainstTreeMap() {
+        checkAgainstTreeMap(new TestRedBlackBST<>(), 2000000);
+    }
+
+    @Test
+    public void testPooledAgainstTreeMap() {
+        TestRedBlackBST<Integer, Integer> testBST = new TestRedBlackBST<>(64);
+        checkAgainstTreeMap(testBST, 500000);
+        for (int i = 1; i <= 100; i++) testBST.put(i, -i); // keys absent from the tree
+        for (int i = 1; i <= 100; i++) testBST.remove(-i);
+        Assert.assertEquals(64, testBST.pooledNodes()); // bounded
+        for (int i = 1; i <= 10; i++) testBST.put(i, -i);
+        Assert.assertEquals(54, testBST.pooledNodes()); // reused
+        for (int i = 1; i <= 10; i++) Assert.assertEquals((Integer) i, testBST.get(-i));
+        Assert.assertTrue(testBST.hasValidCounts());
+    }
+
+    @Test
+    public void testFilteredAgainstTreeMap() {
+        TestRedBlackBST<Integer, Integer> testBST = new TestRedBlackBST<>();
+        testBST.enableFilter(0.01);
+        checkAgainstTreeMap(testBST, 500000); // churn forces rebuilds
+        for (int i = 0; i < 100000; i++) testBST.put(i, -i - 1); // forces resizes
+        for (int i = 0; i < 100000; i++) Assert.assertEquals((Integer) i, testBST.get(-i - 1));
+        for (int i = 0; i < 100000; i++) Assert.assertNull(testBST.get(-i - 100001));
+        Assert.assertTrue(testBST.filterFalsePositiveRate() < 0.02);
+        Assert.assertTrue(testBST.isValidRBST());
+    }
+
+    @Test
+    public void testLoad() {
+        for (int n = 0; n <= 300; n++) {
+            TestRedBlackBST<Integer, Integer> testBST = new TestRedBlackBST<>();
+            List<Integer> keys = new ArrayList<>();
+            List<List<Integer>> values = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                keys.add(2 * i);
+                values.add(i % 3 == 0 ? Arrays.asList(i, -i) : Collections.singletonList(i)); // some duplicates
+            }
+            testBST.load(keys, values);
+            Assert.assertTrue(testBST.isValidRBST());
+            Assert.assertTrue(testBST.hasValidCounts());
+            Assert.assertEquals(n + (n + 2) / 3, testBST.size());
+            if (n == 0) continue;
+            Assert.assertEquals((Integer) 0, testBST.min());
+            Assert.assertEquals((Integer) ((n - 1) % 3 == 0 ? 1 - n : n - 1), testBST.max());
+            for (int i = 0; i < n; i++) Assert.assertEquals((Integer) (i % 3 == 0 ? -i : i), testBST.get(2 * i)); // last pushed on top
+            for (int i = 0; i < n; i++) testBST.put(i, 2 * i + 1); // still balances after a load
+            for (int i = 0; i < n; i += 2) testBST.remove(2 * i);
+            Assert.assertTrue(testBST.isValidRBST());
+            Assert.assertTrue(testBST.hasValidCounts());
+        }
+    }
+
+    @Test
+    public void testLoadRejectsBadInput() {
+        TestRedBlackBST<Integer, Integer> testBST = new TestRedBlackBST<>();
+        try {
+            testBST.load(Arrays.asList(1, 1), Arrays.asList(Collections.singletonList(1), Collections.singletonList(2)));
+            Assert.fail("keys that are not strictly ascending should be rejected");
+        } catch (IllegalArgumentException expected) {
+            Assert.assertTrue(testBST.isEmpty());
+        }
+        testBST.put(1, 1);
+        try {
+            testBST.load(Collections.singletonList(2), Collections.singletonList(Collections.singletonList(2)));
+            Assert.fail("a non-empty tree should not be loaded");
+        } catch (IllegalStateException expected) {
+            Assert.assertEquals(1, testBST.size());
+        }
+    }
+
+    private static void checkAgainstTreeMap(TestRedBlackBST<Integer, Integer> testBST, int ops) {
+        final int bound = 2048, checkEvery = 10000;
+        TreeMap<Integer, Integer> reference = new TreeMap<>();
+        Random gen = new Random();
+        int size = 0;
+        for (int i = 1; i <= ops; i++) {
+            Integer key = gen.nextInt(bound);
+            if (gen.nextInt(100) < 55) {
+                testBST.put(key, key);
+                reference.merge(key, 1, Integer::sum);
+                size++;
+            } else {
+                Integer rmvd = testBST.remove(key);
+                if (reference.containsKey(key)) {
+                    Assert.assertEquals(key, rmvd);
+                    if (reference.merge(key, -1, Integer::sum) == 0) reference.remove(key);
+                    size--;
+                } else {
+                    Assert.assertNull(rmvd);
+                }
+            }
+            Assert.assertEquals(size, testBST.size());
+            Assert.assertEquals(reference.containsKey(key), testBST.contains(key));
+            if (size > 0) {
+                Assert.assertEquals(reference.firstKey(), testBST.min());
+                Assert.assertEquals(reference.lastKey(), testBST.max());
+            }
+
+            if (i % checkEvery == 0) {
+                Assert.assertTrue(testBST.hasValidCounts());
+                int rank = 0;
+                for (Map.Entry<Integer, Integer> e : reference.entrySet()) {
+                    Assert.assertEquals(rank, testBST.rank(e.getKey()));
+                    Assert.assertEquals(e.getKey(), testBST.select(rank + 1));
+                    Assert.assertEquals(e.getKey(), testBST.select(rank + e.getValue()));
+                    rank += e.getValue();
+                }
+            }
+        }
+        Assert.assertTrue(testBST.isValidRBST());
+    }
+
+    @Test
+    public void testPollMinMax() {
+        TestRedBlackBST<Integer, Integer> testBST = new TestRedBlackBST<>();
+        List<Integer> elements = ListUtils.genIntList(5000, 500);
+        for (int x : elements) testBST.put(x, x);
+        Collections.sort(elements);
+        for (int i = 0; i < elements.size() / 2; i++) {
+            Assert.assertEquals(elements.get(i), testBST.pollMin());
+            Assert.assertEquals(elements.get(elements.size() - 1 - i), testBST.pollMax());
+            Assert.assertTrue(testBST.hasValidCounts());
+        }
+        Assert.assertTrue(testBST.isValidRBST());
+        Assert.assertTrue(testBST.isEmpty());
+        Assert.assertNull(testBST.pollMin());
+    }
+
     static class TestRedBlackBST<T, K extends Comparable> extends RedBlackBST<T, K> {
 
         private enum ORIENT {LEFT, RIGHT};
 
+        TestRedBlackBST() {
+            super();
+        }
+
+        TestRedBlackBST(int poolCapacity) {
+            super(poolCapacity);
+        }
+
         /**
          * Recursively checks the BST property for every subtree (node) of the
          * BST.
@@ -67,6 +228,28 @@ public class RebBlackBSTTests {
         }
 
 
+        /**
+         * Checks that every node's count equals the number of objects in it's subtree.
+         * @return true if every subtree count is correct, false if not
+         */
+        public boolean hasValidCounts() {
+            return countObjects(root) == root.getNodeCount();
+        }
+
+        /**
+         * Recursively counts the objects in the subtree rooted at n, returning -1
+         * if any node's count disagrees with the actual number of objects.
+         * @param n the root of the subtree to count
+         * @return the number of objects in n's subtree, or -1 if a count is incorrect
+         */
+        private int countObjects(Node n) {
+            if (n == NODE_DNE) return 0;
+            int l = countObjects(n.getLeftChild());
+            int r = countObjects(n.getRightChild());
+            if (l < 0 || r < 0 || n.getNodeCount() != l + r + n.valCount()) return -1;
+            return n.getNodeCount();
+        }
+
         /**
          * Checks if the tree violates the BST property: every node is
          * greater than or equal to all nodes in it's left subtree and
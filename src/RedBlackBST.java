@@ -2,6 +2,8 @@
  * A parameterized generic implementation of a red black tree data structure.
  */
 
+import java.util.List;
+
 /**
  * A red black tree data structures that supports key-value pairs of a generic type.
  * @param <T> the type of the object to be inserted
@@ -9,6 +11,17 @@
  */
 class RedBlackBST<T, K extends Comparable> extends BST<T, K> {
 
+    RedBlackBST() {
+        super();
+    }
+
+    /**
+     * @param poolCapacity the maximum number of deleted nodes to retain for reuse, 0 to disable pooling
+     */
+    RedBlackBST(int poolCapacity) {
+        super(poolCapacity);
+    }
+
     /**
      * Inserts an object by finding it's place via binary search and creating
      * a new node, then calls balanceInsertion to maintain red black invariant.
@@ -21,32 +34,78 @@ class RedBlackBST<T, K extends Comparable> extends BST<T, K> {
         int kCmp;
         do {
             kCmp = cmp(next.getKey(), key);
-            next.incrementNodeCount(1);
             last = next;
             next = kCmp < 0 ? next.getRightChild() : next.getLeftChild();
         } while (kCmp != 0 && next != NODE_DNE);
 
-        Node insert = new Node(last, object, key, Color.RED);
+        if (kCmp == 0) {
+            last.pushValue(object);
+            refreshPath(last);
+            return;
+        }
 
+        Node insert = createNode(last, object, key, Color.RED);
         if (kCmp < 0) last.setRightChild(insert);
-        else if (kCmp > 0) last.setLeftChild(insert);
+        else last.setLeftChild(insert);
+        trackBounds(insert);
 
-        if (kCmp == 0) last.pushValue(object);
-        else balanceInsertion(insert);
+        refreshPath(last); // before balancing, rotations only refresh the two nodes they move
+        balanceInsertion(insert);
+    }
+
+    /**
+     * Fills this empty tree from distinct keys in ascending order by linking a balanced
+     * tree directly, rather than inserting and rebalancing one object at a time. Every
+     * level but the deepest is full; the deepest level's nodes are red and all others are
+     * black, so every path has the same black height. O(n)
+     * @param keys the distinct keys in ascending order
+     * @param values the objects of each key in insertion order, parallel to keys
+     */
+    void load(List<K> keys, List<List<T>> values) {
+        if (root != NODE_DNE) throw new IllegalStateException("Can only load into an empty tree.");
+        if (keys.size() != values.size()) throw new IllegalArgumentException("Every key needs a list of objects.");
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0 && cmp(keys.get(i - 1), keys.get(i)) >= 0) throw new IllegalArgumentException("Keys must be strictly ascending.");
+            if (values.get(i).isEmpty()) throw new IllegalArgumentException("Every key needs at least one object.");
+        }
+        if (keys.isEmpty()) return;
+        int redDepth = 31 - Integer.numberOfLeadingZeros(keys.size() + 1); // the first incomplete level
+        root = link(NODE_DNE, keys, values, 0, keys.size() - 1, 0, redDepth);
+        minNode = localMin(root);
+        maxNode = localMax(root);
+    }
+
+    /**
+     * Links keys[lo..hi] into a subtree rooted at their median, children before parent so
+     * each node is refreshed once. Recurses O(log n) deep.
+     * @return the root of the subtree, or NODE_DNE if lo > hi
+     */
+    private Node link(Node parent, List<K> keys, List<List<T>> values, int lo, int hi, int depth, int redDepth) {
+        if (lo > hi) return NODE_DNE;
+        int mid = (lo + hi) >>> 1;
+        List<T> objects = values.get(mid);
+        Node n = createNode(parent, objects.get(0), keys.get(mid), depth == redDepth ? Color.RED : Color.BLACK);
+        for (int i = 1; i < objects.size(); i++) n.pushValue(objects.get(i));
+        n.setLeftChild(link(n, keys, values, lo, mid - 1, depth + 1, redDepth));
+        n.setRightChild(link(n, keys, values, mid + 1, hi, depth + 1, redDepth));
+        refresh(n);
+        return n;
     }
 
     /**
-     * Deletes the first node in the subtree with key equal to the key parameter then
-     * calls balanceDeletion to maintain red black invariant.
-     * @param key the key associated with the object to be deleted
-     * @return the node was that deleted, or NODE_DNE if no Node with the specified key exists
+     * Unlinks curr from the tree, unless it holds more than one object, then calls
+     * balanceDeletion to maintain red black invariant.
+     * @param curr the node to delete, or NODE_DNE
+     * @return the node was that deleted, or NODE_DNE if curr was NODE_DNE
      */
     @Override
-    protected Node delete(K key) {
-        Node repl, curr = search(key, true);
+    protected Node delete(Node curr) {
+        Node repl, fix;
         Color oc = curr.getColor();
         if (curr.valCount() > 1 || curr == NODE_DNE) return curr;
+        untrackBounds(curr);
 
+        fix = curr.getParent();
         if (curr.isLeaf()) {
             repl = NODE_DNE;
             repl.setParentNode(curr.getParent()); // temporarily set NODE_DNE's parent to enable traversing during balancing
@@ -57,6 +116,7 @@ class RedBlackBST<T, K extends Comparable> extends BST<T, K> {
         } else {
             Node scr = localMin(curr.getRightChild()); // can also be localMax(n.getLeftChild)
             oc = scr.getColor();
+            fix = scr.getParent() == curr ? scr : scr.getParent();
             repl = scr.getRightChild();
             if (repl == NODE_DNE) repl.setParentNode(scr);
 
@@ -67,13 +127,13 @@ class RedBlackBST<T, K extends Comparable> extends BST<T, K> {
                 repl.setParentNode(scr.getParent()); // in case repl is NODE_DNE and it's parent was not set by supplant
             }
 
-            scr.setNodeCount(curr.getNodeCount() - 1);
             supplant(curr, scr);
             scr.setColor(curr.getColor());
             curr.getLeftChild().setParentNode(scr);
             scr.setLeftChild(curr.getLeftChild());
         }
 
+        refreshPath(fix);
         if (oc == Color.BLACK) balanceDeletion(repl);
         return curr;
     }
@@ -174,7 +234,8 @@ class RedBlackBST<T, K extends Comparable> extends BST<T, K> {
     /**
      * Performs a "left rotation" around n meaning that n's right child
      * replaces n, n becomes the left child of it's right child, and n's
-     * right child's previous left child becomes n's new right child.
+     * right child's previous left child becomes n's new right child. Only n and
+     * it's right child change subtrees, so only their augmentation is refreshed.
      * @param n left most node of the left rotation
      */
     private void leftRotate(Node n) {
@@ -195,12 +256,15 @@ class RedBlackBST<T, K extends Comparable> extends BST<T, K> {
         n.setParentNode(rc);
         n.setRightChild(rlc);
         if (rlc != NODE_DNE) rlc.setParentNode(n);
+        refresh(n);
+        refresh(rc);
     }
 
     /**
      * Performs a "right rotation" around n meaning that n's left child
      * replaces n, n becomes the right child of it's left child, and n's
-     * left child's previous right child becomes n's new left child.
+     * left child's previous right child becomes n's new left child. Only n and
+     * it's left child change subtrees, so only their augmentation is refreshed.
      * @param n right most node of the right rotation
      */
     private void rightRotate(Node n) {
@@ -221,5 +285,7 @@ class RedBlackBST<T, K extends Comparable> extends BST<T, K> {
         n.setParentNode(lc);
         n.setLeftChild(lrc);
         if (lrc != NODE_DNE) lrc.setParentNode(n);
+        refresh(n);
+        refresh(lc);
     }
 }
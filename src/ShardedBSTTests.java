@@ -0,0 +1,122 @@
+/*
+ * A set of unit tests covering the sharded red black BST.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+import util.ListUtils;
+
+import java.util.*;
+
+/**
+ * A set of unit tests covering global order statistics, shard splitting and concurrent puts.
+ */
+public class ShardedBSTTests {
+
+    @Test
+    public void testSelectAcrossShards() {
+        ShardedRedBlackBST<Integer, Integer> testBST = new ShardedRedBlackBST<>(Arrays.asList(250, 500, 750), 100);
+        List<Integer> elements = ListUtils.genIntList(5000, 1000);
+        for (int x : elements) testBST.put(x, x);
+        Assert.assertTrue(testBST.shardCount() > 4);
+
+        Collections.sort(elements);
+        Assert.assertEquals(elements.size(), testBST.size());
+        for (int i = 1; i <= elements.size(); i++) {
+            Assert.assertEquals(elements.get(i - 1), testBST.select(i));
+        }
+        Assert.assertEquals(elements.get(0), testBST.min());
+        Assert.assertEquals(elements.get(elements.size() - 1), testBST.max());
+
+        List<Integer> iterated = new ArrayList<>();
+        for (int x : testBST) iterated.add(x);
+        Assert.assertEquals(elements, iterated);
+    }
+
+    @Test
+    public void testRemove() {
+        ShardedRedBlackBST<Integer, Integer> testBST = new ShardedRedBlackBST<>(Collections.<Integer>emptyList(), 64);
+        List<Integer> elements = ListUtils.genIntList(2000, 1000);
+        for (int x : elements) testBST.put(x, x);
+        for (int x : elements) {
+            Assert.assertEquals((Integer) x, testBST.remove(x));
+        }
+        Assert.assertTrue(testBST.isEmpty());
+        Assert.assertNull(testBST.get(1));
+    }
+
+    @Test
+    public void testDuplicateKeysDoNotSplit() {
+        ShardedRedBlackBST<Integer, Integer> testBST = new ShardedRedBlackBST<>(Collections.<Integer>emptyList(), 8);
+        for (int i = 0; i < 100; i++) testBST.put(i, 7);
+        Assert.assertEquals(1, testBST.shardCount());
+        Assert.assertEquals(100, testBST.size());
+        testBST.put(100, 3); // a second key makes the shard splittable again
+        Assert.assertEquals(2, testBST.shardCount());
+        Assert.assertEquals((Integer) 100, testBST.select(1));
+        Assert.assertEquals((Integer) 99, testBST.select(101));
+    }
+
+    @Test
+    public void testSplitsKeepDuplicateOrder() {
+        ShardedRedBlackBST<Integer, Integer> testBST = new ShardedRedBlackBST<>(Collections.<Integer>emptyList(), 64);
+        for (int i = 0; i < 5000; i++) testBST.put(i, i % 97);
+        Assert.assertTrue(testBST.shardCount() > 1);
+        List<Integer> expected = new ArrayList<>();
+        for (int key = 0; key < 97; key++) {
+            for (int i = key; i < 5000; i += 97) expected.add(i); // in insertion order within a key
+        }
+        List<Integer> iterated = new ArrayList<>();
+        for (int x : testBST) iterated.add(x);
+        Assert.assertEquals(expected, iterated);
+    }
+
+    @Test
+    public void testConcurrentPutsAndRemoves() throws InterruptedException {
+        final ShardedRedBlackBST<Integer, Integer> testBST = new ShardedRedBlackBST<>(Collections.<Integer>emptyList(), 256);
+        final int threads = 4, perThread = 20000;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    testBST.put(i * threads + offset, i * threads + offset);
+                    if (i % 2 == 1) testBST.remove((i - 1) * threads + offset); // splits race with writes
+                }
+            }));
+        }
+        for (Thread t : writers) t.start();
+        for (Thread t : writers) t.join();
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 1; i < perThread; i += 2) {
+            for (int t = 0; t < threads; t++) expected.add(i * threads + t);
+        }
+        List<Integer> iterated = new ArrayList<>();
+        for (int x : testBST) iterated.add(x);
+        Assert.assertEquals(expected, iterated);
+        Assert.assertEquals(expected.size(), testBST.size());
+        Assert.assertTrue(testBST.shardCount() > 1);
+    }
+
+    @Test
+    public void testConcurrentPuts() throws InterruptedException {
+        final ShardedRedBlackBST<Integer, Integer> testBST = new ShardedRedBlackBST<>(Arrays.asList(1 << 28, 1 << 29, 3 << 28), 1 << 12);
+        final int threads = 4, perThread = 20000;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            writers.add(new Thread(() -> {
+                for (int x : ListUtils.genIntList(perThread, Integer.MAX_VALUE)) testBST.put(x, x);
+            }));
+        }
+        for (Thread t : writers) t.start();
+        for (Thread t : writers) t.join();
+
+        Assert.assertEquals(threads * perThread, testBST.size());
+        Integer prev = null;
+        for (int x : testBST) {
+            Assert.assertTrue(prev == null || prev <= x);
+            prev = x;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * A range partitioned set of red black trees that scales writes across threads.
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread safe ordered container that splits the key space into contiguous ranges, each
+ * held by its own RedBlackBST and lock, so writes to different ranges proceed in parallel.
+ * Global order statistics are composed from the per shard node counts. When a shard grows
+ * beyond maxShardSize it is split at its median key, which briefly takes the layout lock
+ * exclusively; every other operation holds the layout lock shared.
+ * @param <T> the type of the object to be inserted
+ * @param <K> the type of the keys associated with the objects
+ */
+class ShardedRedBlackBST<T, K extends Comparable> implements Iterable<T> {
+
+    /** Held shared by every operation and exclusively while split shards are swapped in. */
+    private final ReentrantReadWriteLock layout = new ReentrantReadWriteLock();
+    private final int maxShardSize;
+    /** Shards in ascending key order, replaced only while holding the layout write lock. */
+    private List<Shard<T, K>> shards = new ArrayList<>();
+
+    /**
+     * @param splitKeys the initial lower bounds (inclusive) of every shard but the first, ascending
+     * @param maxShardSize the number of objects at which a shard is split in two
+     */
+    ShardedRedBlackBST(List<K> splitKeys, int maxShardSize) {
+        if (maxShardSize < 2) throw new IllegalArgumentException("Shards must be able to hold at least 2 objects.");
+        this.maxShardSize = maxShardSize;
+        shards.add(new Shard<>(null));
+        for (int i = 0; i < splitKeys.size(); i++) {
+            if (i > 0 && cmp(splitKeys.get(i - 1), splitKeys.get(i)) >= 0) throw new IllegalArgumentException("Split keys must be strictly ascending.");
+            shards.add(new Shard<>(splitKeys.get(i)));
+        }
+    }
+
+    /**
+     * Inserts a object/key pair into the shard owning key, splitting the shard if it
+     * has grown too large. O(log n)
+     * @param object the object to insert
+     * @param key the key for that object
+     */
+    public void put(T object, K key) {
+        Shard<T, K> owner;
+        boolean full;
+        layout.readLock().lock();
+        try {
+            owner = shards.get(locate(key));
+            owner.lock.writeLock().lock();
+            try {
+                owner.tree.put(object, key);
+                owner.version++;
+                if (owner.soleKey != null && cmp(key, owner.soleKey) != 0) owner.soleKey = null; // splittable again
+                full = owner.soleKey == null && owner.tree.size() > maxShardSize;
+            } finally {
+                owner.lock.writeLock().unlock();
+            }
+        } finally {
+            layout.readLock().unlock();
+        }
+        if (full) split(owner);
+    }
+
+    /**
+     * Gets the object associated with key from the shard owning key. O(log n)
+     * @param key the key associated with the desired object
+     * @return the object associated with key, or null if there is none
+     */
+    public T get(K key) {
+        layout.readLock().lock();
+        try {
+            Shard<T, K> owner = shards.get(locate(key));
+            owner.lock.readLock().lock();
+            try {
+                return owner.tree.isEmpty() ? null : owner.tree.get(key);
+            } finally {
+                owner.lock.readLock().unlock();
+            }
+        } finally {
+            layout.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the object associated with key from the shard owning key. O(log n)
+     * @param key the key associated with the object to be removed
+     * @return the removed object, or null if there is none
+     */
+    public T remove(K key) {
+        layout.readLock().lock();
+        try {
+            Shard<T, K> owner = shards.get(locate(key));
+            owner.lock.writeLock().lock();
+            try {
+                owner.version++;
+                return owner.tree.remove(key);
+            } finally {
+                owner.lock.writeLock().unlock();
+            }
+        } finally {
+            layout.readLock().unlock();
+        }
+    }
+
+    public boolean contains(K key) { return get(key) != null; }
+    public boolean isEmpty() { return size() == 0; }
+
+    /**
+     * @return the number of objects across all shards, as of a consistent cut
+     */
+    public int size() {
+        layout.readLock().lock();
+        lockAll();
+        try {
+            int size = 0;
+            for (Shard<T, K> s : shards) size += s.tree.size();
+            return size;
+        } finally {
+            unlockAll();
+            layout.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the object associated with the nth smallest key across all shards by
+     * skipping whole shards using their node counts. O(shards + log n)
+     * @param n the rank of the desired element (least - greatest)
+     * @return the element with the nth smallest key
+     */
+    public T select(int n) {
+        layout.readLock().lock();
+        lockAll();
+        try {
+            int rem = n;
+            for (Shard<T, K> s : shards) {
+                if (rem > 0 && rem <= s.tree.size()) return s.tree.select(rem);
+                rem -= s.tree.size();
+            }
+            throw new IllegalArgumentException("Rank cannot be less than 0 or greater than the size of the BST.");
+        } finally {
+            unlockAll();
+            layout.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the object associated with the least key across all shards
+     */
+    public T min() {
+        layout.readLock().lock();
+        try {
+            for (Shard<T, K> s : shards) {
+                T min = s.min();
+                if (min != null) return min;
+            }
+            throw new IllegalStateException("Empty tree.");
+        } finally {
+            layout.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the object associated with the greatest key across all shards
+     */
+    public T max() {
+        layout.readLock().lock();
+        try {
+            for (int i = shards.size() - 1; i >= 0; i--) {
+                T max = shards.get(i).max();
+                if (max != null) return max;
+            }
+            throw new IllegalStateException("Empty tree.");
+        } finally {
+            layout.readLock().unlock();
+        }
+    }
+
+    public int shardCount() {
+        layout.readLock().lock();
+        try {
+            return shards.size();
+        } finally {
+            layout.readLock().unlock();
+        }
+    }
+
+    /**
+     * Iterates over every object in key order, one shard at a time. Each shard is
+     * copied under it's read lock, so the iteration is consistent within a shard but
+     * may reflect writes to later shards made while iterating.
+     * @return an iterator over the objects in key order
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private final List<T> batch = new ArrayList<>();
+            private int pos;
+            private K next; // lower bound of the next shard to copy, null once exhausted
+            private boolean started;
+
+            @Override
+            public boolean hasNext() {
+                while (pos == batch.size() && (!started || next != null)) fill();
+                return pos < batch.size();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return batch.get(pos++);
+            }
+
+            private void fill() {
+                batch.clear();
+                pos = 0;
+                layout.readLock().lock();
+                try {
+                    int i = started ? locate(next) : 0;
+                    started = true;
+                    shards.get(i).copyTo(batch);
+                    next = i + 1 < shards.size() ? shards.get(i + 1).lower : null;
+                } finally {
+                    layout.readLock().unlock();
+                }
+            }
+        };
+    }
+
+    /**
+     * Splits s at it's median key into two shards, unless it has already been split or
+     * holds only a single key, in which case s is marked with that key so later puts of
+     * it do not retry until another key arrives. Both halves are bulk loaded from an in
+     * order walk of s under it's read lock, so only writers to s wait for the copy. The
+     * layout write lock is then held just to swap them in; if s was written in between,
+     * the split is dropped and the writer's own put retries it. O(n) in the size of s
+     * @param s the shard that grew beyond maxShardSize
+     */
+    private void split(Shard<T, K> s) {
+        Shard<T, K> lo = null, hi = null;
+        K sole = null;
+        long version;
+        s.lock.readLock().lock();
+        try {
+            if (s.tree.size() <= maxShardSize) return;
+            version = s.version;
+            List<RedBlackBST<T, K>.Node> nodes = s.tree.inOrder(null, null);
+            List<K> keys = new ArrayList<>(nodes.size());
+            List<List<T>> values = new ArrayList<>(nodes.size());
+            int median = 0; // the node holding the (size / 2)th object, the least key of hi
+            for (int seen = nodes.get(0).valCount(); seen < s.tree.size() / 2; seen += nodes.get(median).valCount()) median++;
+            median = Math.max(median, 1); // keep lo non-empty
+            for (RedBlackBST<T, K>.Node n : nodes) {
+                keys.add(n.getKey());
+                values.add(n.getValues());
+            }
+            if (median == nodes.size()) { // a single key cannot be split
+                sole = keys.get(0);
+            } else {
+                lo = new Shard<>(s.lower);
+                lo.tree.load(keys.subList(0, median), values.subList(0, median));
+                hi = new Shard<>(keys.get(median));
+                hi.tree.load(keys.subList(median, keys.size()), values.subList(median, keys.size()));
+            }
+        } finally {
+            s.lock.readLock().unlock();
+        }
+
+        layout.writeLock().lock(); // never while holding a shard lock, writers take layout first
+        try {
+            int i = shards.indexOf(s);
+            if (i < 0 || s.version != version) return; // already split, or changed since the copy
+            if (sole != null) {
+                s.soleKey = sole;
+                return;
+            }
+            List<Shard<T, K>> replaced = new ArrayList<>(shards);
+            replaced.set(i, lo);
+            replaced.add(i + 1, hi);
+            shards = replaced;
+        } finally {
+            layout.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Binary searches for the shard owning key, must hold the layout lock.
+     * @param key the key to locate
+     * @return the index of the last shard whose lower bound is at most key
+     */
+    private int locate(K key) {
+        int lo = 1, hi = shards.size() - 1, owner = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cmp(shards.get(mid).lower, key) <= 0) {
+                owner = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * Read locks every shard in key order. Writers only ever hold a single shard lock,
+     * so acquiring in order cannot deadlock.
+     */
+    private void lockAll() {
+        for (Shard<T, K> s : shards) s.lock.readLock().lock();
+    }
+
+    private void unlockAll() {
+        for (Shard<T, K> s : shards) s.lock.readLock().unlock();
+    }
+
+    /**
+     * Compares to K key values by calling compareTo
+     * @param key1 the first key to be compared
+     * @param key2 the second key to be compared
+     * @return 0 if key1 == key2, a negative int if key1 < key2, a positive int if key1 > key2
+     */
+    @SuppressWarnings("unchecked")
+    private int cmp(K key1, K key2) {
+        return key1.compareTo(key2);
+    }
+
+    /**
+     * A single range [lower, next shard's lower) of the key space.
+     */
+    private static class Shard<T, K extends Comparable> {
+
+        private final K lower; // null for the first shard
+        private final RedBlackBST<T, K> tree = new RedBlackBST<>();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        /** The only key of a shard that was too large but could not be split, else null. */
+        private K soleKey;
+        /** Counts writes, so a split can tell whether the shard changed after it's copy. */
+        private long version;
+
+        Shard(K lower) {
+            this.lower = lower;
+        }
+
+        T min() {
+            lock.readLock().lock();
+            try {
+                return tree.isEmpty() ? null : tree.min();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        T max() {
+            lock.readLock().lock();
+            try {
+                return tree.isEmpty() ? null : tree.max();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Appends every object in this shard to out in key order.
+         * @param out the list to append to
+         */
+        void copyTo(List<T> out) {
+            lock.readLock().lock();
+            try {
+                for (RedBlackBST<T, K>.Node n : tree.inOrder(null, null)) out.addAll(n.getValues());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * An iterative, parallel validator of BST and red black tree invariants.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Verifies a tree's invariants and gathers it's shape statistics in a single pass:
+ * key ordering against the bounds set by every ancestor, parent links, subtree object
+ * counts and, for a RedBlackBST, a black root, no red node with a red child and equal
+ * black heights. Subtrees are walked with an explicit stack, so an unbalanced BST with
+ * millions of sorted keys cannot overflow the call stack, and large trees are cut into
+ * subtrees that are audited in parallel on a ForkJoinPool. A child whose parent link is
+ * wrong, that is the root, or that is both children of it's parent is reported and not
+ * descended into, so every node is visited at most once and a corrupted tree with a cycle
+ * cannot trap the walk. The tree must not be modified while it is audited. O(n) work
+ * @param <T> the type of the objects in the tree
+ * @param <K> the type of the keys associated with the objects
+ */
+class TreeAuditor<T, K extends Comparable> {
+
+    /** Subtrees with fewer objects than this are audited by a single task. */
+    static final int SEQUENTIAL_THRESHOLD = 1 << 14;
+    /** Number of violation messages kept in a report, further ones are only counted. */
+    static final int MAX_MESSAGES = 20;
+
+    private final ForkJoinPool pool;
+
+    TreeAuditor() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool the pool that audits subtrees
+     */
+    TreeAuditor(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Audits every node of tree. Red black invariants are checked if tree is a RedBlackBST.
+     * @param tree the tree to audit
+     * @return the statistics and violations found
+     */
+    public AuditReport audit(BST<T, K> tree) {
+        boolean redBlack = tree instanceof RedBlackBST;
+        Summary total = new Summary();
+        if (tree.root == tree.NODE_DNE) return new AuditReport(total, redBlack);
+        if (redBlack && tree.root.getColor() != BST.Color.BLACK) total.violation("Root " + tree.root.getKey() + " is red.");
+
+        // Expand the top of the tree breadth first until every frontier subtree is small
+        // enough or there are enough subtrees to occupy the pool.
+        List<Frame> top = new ArrayList<>();
+        List<Frame> frontier = new ArrayList<>();
+        Deque<Frame> queue = new ArrayDeque<>();
+        queue.add(new Frame(tree.root, null, null));
+        int target = 4 * pool.getParallelism();
+        while (!queue.isEmpty()) {
+            Frame f = queue.poll();
+            if (f.node.getNodeCount() < SEQUENTIAL_THRESHOLD || frontier.size() + queue.size() >= target) {
+                frontier.add(f);
+                continue;
+            }
+            top.add(f);
+            for (Frame child : children(tree, f, total)) queue.add(child);
+        }
+
+        List<ForkJoinTask<Summary>> tasks = new ArrayList<>();
+        for (Frame f : frontier) tasks.add(pool.submit(() -> auditSubtree(tree, f, redBlack)));
+        Map<BST<T, K>.Node, Summary> summaries = new IdentityHashMap<>();
+        for (int i = 0; i < frontier.size(); i++) summaries.put(frontier.get(i).node, tasks.get(i).join());
+
+        for (int i = top.size() - 1; i >= 0; i--) { // children before parents
+            Frame f = top.get(i);
+            BST<T, K>.Node n = f.node;
+            Summary left = f.hasLeft ? summaries.get(n.getLeftChild()) : Summary.EMPTY;
+            Summary right = f.hasRight ? summaries.get(n.getRightChild()) : Summary.EMPTY;
+            summaries.put(n, combine(tree, n, left, right, redBlack, total));
+        }
+        Summary root = summaries.get(tree.root);
+        for (Summary s : summaries.values()) total.violations(s); // each summary holds only it's own task's violations
+        total.absorb(root);
+        return new AuditReport(total, redBlack);
+    }
+
+    /**
+     * Audits the subtree of f by an iterative post-order walk.
+     */
+    private Summary auditSubtree(BST<T, K> tree, Frame start, boolean redBlack) {
+        Summary violations = new Summary();
+        Deque<Frame> stack = new ArrayDeque<>();
+        Deque<Summary> results = new ArrayDeque<>(); // summaries of finished subtrees
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            Frame f = stack.peek();
+            if (!f.expanded) {
+                f.expanded = true;
+                for (Frame child : children(tree, f, violations)) stack.push(child); // right first, so left finishes first
+                continue;
+            }
+            stack.pop();
+            BST<T, K>.Node n = f.node;
+            Summary right = f.hasRight ? results.pop() : Summary.EMPTY;
+            Summary left = f.hasLeft ? results.pop() : Summary.EMPTY;
+            results.push(combine(tree, n, left, right, redBlack, violations));
+        }
+        Summary s = results.pop();
+        s.violations(violations);
+        return s;
+    }
+
+    /**
+     * Checks the links from f's node to it's children and their keys against the bounds,
+     * recording in f which children are safe to descend into.
+     * @return frames for the children to descend into, right child first
+     */
+    private List<Frame> children(BST<T, K> tree, Frame f, Summary violations) {
+        BST<T, K>.Node n = f.node;
+        List<Frame> children = new ArrayList<>(2);
+        BST<T, K>.Node r = n.getRightChild(), l = n.getLeftChild();
+        if (r != tree.NODE_DNE && r == l) {
+            violations.violation("Node " + n.getKey() + " has " + r.getKey() + " as both children.");
+        } else if (r != tree.NODE_DNE && linked(tree, n, r, violations)) {
+            if (!inBounds(r.getKey(), n.getKey(), f.hi)) violations.violation("Node " + r.getKey() + " is out of order in the right subtree of " + n.getKey() + ".");
+            children.add(new Frame(r, n.getKey(), f.hi));
+            f.hasRight = true;
+        }
+        if (l != tree.NODE_DNE && linked(tree, n, l, violations)) {
+            if (!inBounds(l.getKey(), f.lo, n.getKey())) violations.violation("Node " + l.getKey() + " is out of order in the left subtree of " + n.getKey() + ".");
+            children.add(new Frame(l, f.lo, n.getKey()));
+            f.hasLeft = true;
+        }
+        return children;
+    }
+
+    /**
+     * @return true if child links back to parent n and is not the root, which would close a cycle
+     */
+    private boolean linked(BST<T, K> tree, BST<T, K>.Node n, BST<T, K>.Node child, Summary violations) {
+        if (child == tree.root) {
+            violations.violation("Node " + n.getKey() + " links back to the root " + child.getKey() + ".");
+            return false;
+        }
+        if (child.getParent() != n) {
+            violations.violation("Node " + child.getKey() + " does not link to it's parent " + n.getKey() + ".");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks node n given the summaries of it's subtrees.
+     * @return the summary of n's subtree
+     */
+    private Summary combine(BST<T, K> tree, BST<T, K>.Node n, Summary left, Summary right, boolean redBlack, Summary violations) {
+        Summary s = new Summary();
+        s.nodes = left.nodes + right.nodes + 1;
+        s.objects = left.objects + right.objects + n.valCount();
+        s.duplicates = left.duplicates + right.duplicates + Math.max(n.valCount() - 1, 0);
+        s.height = Math.max(left.height, right.height) + 1;
+        s.blackHeight = Math.max(left.blackHeight, right.blackHeight) + (n.getColor() == BST.Color.BLACK ? 1 : 0);
+
+        if (n.valCount() == 0) violations.violation("Node " + n.getKey() + " holds no objects.");
+        if (n.getNodeCount() != s.objects) violations.violation("Node " + n.getKey() + " counts " + n.getNodeCount() + " objects but it's subtree holds " + s.objects + ".");
+        if (redBlack) {
+            if (left.blackHeight != right.blackHeight) violations.violation("Node " + n.getKey() + " has black heights " + left.blackHeight + " and " + right.blackHeight + ".");
+            if (n.getColor() == BST.Color.RED && (n.getLeftChild().getColor() == BST.Color.RED || n.getRightChild().getColor() == BST.Color.RED)) {
+                violations.violation("Red node " + n.getKey() + " has a red child.");
+            }
+        }
+        return s;
+    }
+
+    /**
+     * @return true if lo < key < hi, where a null bound is unbounded
+     */
+    @SuppressWarnings("unchecked")
+    private boolean inBounds(K key, K lo, K hi) {
+        return (lo == null || lo.compareTo(key) < 0) && (hi == null || key.compareTo(hi) < 0);
+    }
+
+    /**
+     * A node still to be audited and the exclusive key bounds set by it's ancestors.
+     */
+    private class Frame {
+
+        private final BST<T, K>.Node node;
+        private final K lo, hi; // null if unbounded
+        private boolean expanded;
+        private boolean hasLeft, hasRight; // whether each child was descended into
+
+        Frame(BST<T, K>.Node node, K lo, K hi) {
+            this.node = node;
+            this.lo = lo;
+            this.hi = hi;
+        }
+    }
+
+    /**
+     * The statistics of a subtree, or a collector of violations.
+     */
+    private static class Summary {
+
+        static final Summary EMPTY = new Summary();
+
+        private long nodes, objects, duplicates;
+        private int height, blackHeight; // black height excludes the nil leaves
+        private long violationCount;
+        private final List<String> messages = new ArrayList<>();
+
+        void violation(String message) {
+            violationCount++;
+            if (messages.size() < MAX_MESSAGES) messages.add(message);
+        }
+
+        /**
+         * Adds the violations of other to this summary's.
+         */
+        void violations(Summary other) {
+            if (other == this) return;
+            violationCount += other.violationCount;
+            for (String m : other.messages) if (messages.size() < MAX_MESSAGES) messages.add(m);
+            other.violationCount = 0;
+            other.messages.clear();
+        }
+
+        /**
+         * Copies the statistics of other into this summary.
+         */
+        void absorb(Summary other) {
+            nodes = other.nodes;
+            objects = other.objects;
+            duplicates = other.duplicates;
+            height = other.height;
+            blackHeight = other.blackHeight;
+        }
+    }
+
+    /**
+     * The result of an audit: the tree's shape statistics and any invariant violations.
+     */
+    static class AuditReport {
+
+        private final long nodes, objects, duplicates;
+        private final int height, blackHeight;
+        private final long violationCount;
+        private final List<String> violations;
+
+        private AuditReport(Summary s, boolean redBlack) {
+            nodes = s.nodes;
+            objects = s.objects;
+            duplicates = s.duplicates;
+            height = s.height;
+            blackHeight = redBlack ? s.blackHeight : -1;
+            violationCount = s.violationCount;
+            violations = Collections.unmodifiableList(new ArrayList<>(s.messages));
+        }
+
+        public boolean isValid() { return violationCount == 0; }
+        /** @return the number of nodes, i.e. distinct keys */
+        public long nodes() { return nodes; }
+        /** @return the number of objects, duplicates included */
+        public long objects() { return objects; }
+        /** @return the number of objects beyond the first of each key */
+        public long duplicates() { return duplicates; }
+        /** @return the number of nodes on the longest root to leaf path, 0 if empty */
+        public int height() { return height; }
+        /** @return the number of black nodes on a root to leaf path, -1 if not a red black tree */
+        public int blackHeight() { return blackHeight; }
+        public long violationCount() { return violationCount; }
+        /** @return the first MAX_MESSAGES violations found, in no particular order */
+        public List<String> violations() { return violations; }
+
+        @Override
+        public String toString() {
+            return "AuditReport{nodes=" + nodes + ", objects=" + objects + ", duplicates=" + duplicates
+                    + ", height=" + height + ", blackHeight=" + blackHeight + ", violations=" + violationCount + "}";
+        }
+    }
+}
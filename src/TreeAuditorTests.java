@@ -0,0 +1,135 @@
+/*
+ * A set of unit tests covering the iterative tree auditor.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+import util.ListUtils;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A set of unit tests checking audit statistics on valid trees and violations on corrupted ones.
+ */
+public class TreeAuditorTests {
+
+    @Test
+    public void testValidRedBlackTree() {
+        RedBlackBST<Integer, Integer> testBST = new RedBlackBST<>();
+        List<Integer> elements = ListUtils.genIntList(300000, 200000);
+        for (int x : elements) testBST.put(x, x);
+        int distinct = new HashSet<>(elements).size();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        TreeAuditor.AuditReport report = new TreeAuditor<Integer, Integer>(pool).audit(testBST);
+        pool.shutdown();
+        Assert.assertTrue(report.violations().toString(), report.isValid());
+        Assert.assertEquals(distinct, report.nodes());
+        Assert.assertEquals(elements.size(), report.objects());
+        Assert.assertEquals(elements.size() - distinct, report.duplicates());
+        Assert.assertTrue(report.height() <= 2 * (32 - Integer.numberOfLeadingZeros(distinct + 1)));
+        Assert.assertTrue(report.blackHeight() > 0 && report.blackHeight() <= report.height());
+    }
+
+    @Test
+    public void testEmptyAndPlainTrees() {
+        TreeAuditor.AuditReport empty = new TreeAuditor<Integer, Integer>().audit(new RedBlackBST<>());
+        Assert.assertTrue(empty.isValid());
+        Assert.assertEquals(0, empty.nodes());
+        Assert.assertEquals(0, empty.height());
+
+        BST<Integer, Integer> testBST = new BST<>();
+        for (int x : ListUtils.genIntList(5000, 1000)) testBST.put(x, x);
+        TreeAuditor.AuditReport report = new TreeAuditor<Integer, Integer>().audit(testBST);
+        Assert.assertTrue(report.isValid());
+        Assert.assertEquals(5000, report.objects());
+        Assert.assertEquals(-1, report.blackHeight());
+    }
+
+    /**
+     * Links a million sorted keys into a single right spine, the shape sorted inserts give
+     * an unbalanced BST, without paying for the quadratic inserts.
+     */
+    @Test
+    public void testDegenerateTree() {
+        final int n = 1000000;
+        BST<Integer, Integer> testBST = new BST<>();
+        BST<Integer, Integer>.Node last = testBST.NODE_DNE;
+        for (int i = 0; i < n; i++) {
+            BST<Integer, Integer>.Node next = testBST.newNode(last, i, i, BST.Color.BLACK);
+            if (last == testBST.NODE_DNE) testBST.root = next;
+            else last.setRightChild(next);
+            last = next;
+        }
+        for (int count = 1; last != testBST.NODE_DNE; last = last.getParent()) last.setNodeCount(count++);
+
+        TreeAuditor.AuditReport report = new TreeAuditor<Integer, Integer>().audit(testBST);
+        Assert.assertTrue(report.isValid());
+        Assert.assertEquals(n, report.nodes());
+        Assert.assertEquals(n, report.height());
+        Assert.assertEquals(0, report.duplicates());
+    }
+
+    @Test
+    public void testDetectsCorruption() {
+        TreeAuditor<Integer, Integer> auditor = new TreeAuditor<>();
+
+        RedBlackBST<Integer, Integer> testBST = build();
+        testBST.root.getLeftChild().setNodeCount(-1);
+        assertViolation(auditor.audit(testBST), "counts");
+
+        testBST = build();
+        testBST.root.setColor(BST.Color.RED);
+        assertViolation(auditor.audit(testBST), "red");
+
+        testBST = build();
+        BST<Integer, Integer>.Node n = testBST.root.getLeftChild();
+        BST<Integer, Integer>.Node l = n.getLeftChild();
+        n.setLeftChild(n.getRightChild());
+        n.setRightChild(l);
+        assertViolation(auditor.audit(testBST), "out of order");
+
+        testBST = build();
+        testBST.root.getRightChild().setParentNode(testBST.NODE_DNE);
+        assertViolation(auditor.audit(testBST), "parent");
+
+        testBST = build();
+        testBST.root.getLeftChild().getLeftChild().setColor(BST.Color.RED);
+        assertViolation(auditor.audit(testBST), "black heights");
+    }
+
+    @Test
+    public void testCyclesTerminate() {
+        TreeAuditor<Integer, Integer> auditor = new TreeAuditor<>();
+        RedBlackBST<Integer, Integer> testBST = new RedBlackBST<>();
+        for (int i = 0; i < 100; i++) testBST.put(i, i);
+        testBST.localMax(testBST.root).setRightChild(testBST.root);
+        assertViolation(auditor.audit(testBST), "links back to the root");
+
+        testBST = build();
+        BST<Integer, Integer>.Node n = testBST.localMin(testBST.root);
+        n.setLeftChild(n.getParent().getParent()); // back edge to an ancestor
+        assertViolation(auditor.audit(testBST), "does not link to it's parent");
+
+        testBST = build();
+        n = testBST.root.getLeftChild();
+        n.setRightChild(n.getLeftChild());
+        TreeAuditor.AuditReport report = auditor.audit(testBST);
+        assertViolation(report, "as both children");
+        Assert.assertTrue(report.nodes() < 1000); // the shared child was walked once
+    }
+
+    private static RedBlackBST<Integer, Integer> build() {
+        RedBlackBST<Integer, Integer> testBST = new RedBlackBST<>();
+        for (int i = 0; i < 1000; i++) testBST.put(i, i);
+        return testBST;
+    }
+
+    private static void assertViolation(TreeAuditor.AuditReport report, String expected) {
+        Assert.assertFalse(report.isValid());
+        boolean found = false;
+        for (String v : report.violations()) found |= v.contains(expected);
+        Assert.assertTrue(report.violations().toString(), found);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Vectorized search of sorted int blocks using the incubating Vector API.
+ */
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Counts the keys of a sorted block that are less than a search key by comparing a full
+ * vector of keys at a time. Kept in it's own source root so that src/ compiles with plain
+ * javac; compile it against the src/ classes with --add-modules jdk.incubator.vector and
+ * run with the same flag for IntBlockTree to look it up.
+ */
+final class VectorIntSearch {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private VectorIntSearch() {}
+
+    /**
+     * @param keys a sorted block, padded past it's length with Integer.MAX_VALUE
+     * @param key the key to search for
+     * @return the number of keys less than key, i.e. the index key belongs at
+     */
+    static int lowerBound(int[] keys, int key) {
+        int count = 0, i = 0;
+        int bound = SPECIES.loopBound(keys.length);
+        for (; i < bound; i += SPECIES.length()) {
+            count += IntVector.fromArray(SPECIES, keys, i).compare(VectorOperators.LT, key).trueCount();
+        }
+        for (; i < keys.length; i++) {
+            if (keys[i] < key) count++;
+        }
+        return count;
+    }
+}